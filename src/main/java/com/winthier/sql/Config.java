@@ -1,6 +1,9 @@
 package com.winthier.sql;
 
+import java.util.ArrayList;
+import java.util.List;
 import lombok.Data;
+import org.bukkit.Bukkit;
 import org.bukkit.configuration.ConfigurationSection;
 
 @Data
@@ -13,6 +16,36 @@ final class Config {
     protected String password = "";
     protected boolean debug;
     protected int backlogThreshold = 1000;
+    protected int poolMinSize = 1;
+    protected int poolMaxSize = 4;
+    protected long poolConnectionTimeout = 10_000L;
+    protected long poolIdleTimeout = 600_000L;
+    protected long poolMaxLifetime = 1_800_000L;
+    protected long poolLeakDetectionThreshold = 0L;
+    protected long poolValidationInterval = 5_000L;
+    protected long poolKeepaliveInterval = 60_000L;
+    protected int statementCacheSize = 64;
+    /** Let the server prepare statements, so cached ones skip parsing. */
+    protected boolean serverPrepStmts = true;
+    /** Let the driver send a batch in one round trip. */
+    protected boolean rewriteBatchedStatements = true;
+    protected int asyncWorkers = 1;
+    protected int asyncQueueDepth = 0;
+    protected SQLOverflowPolicy asyncOverflowPolicy = SQLOverflowPolicy.BLOCK;
+    protected boolean asyncVirtualThreads;
+    protected long callbackBudget = 5L;
+    protected long asyncShutdownTimeout = 60_000L;
+    protected int asyncBatchSize = 100;
+    protected int saveChunkSize = 1_000;
+    protected long saveChunkBytes = 1_000_000L;
+    protected int deleteChunkSize = 1_000;
+    protected int inListChunkSize = 1_024;
+    protected int streamFetchSize = 0;
+    protected long asyncBatchWindow = 0L;
+    protected long writeBehindInterval = 1_000L;
+    /** Read replicas as host or host:port, sharing database and user. */
+    protected List<String> replicas = List.of();
+    protected long replicaStickiness = 5_000L;
 
     protected void load(final String name, ConfigurationSection config) {
         final String lowerName = SQLUtil.camelToLowerCase(name);
@@ -32,10 +65,77 @@ final class Config {
         if (cPassword != null && !cPassword.isEmpty()) password = cPassword;
         if (config.isSet("debug")) debug = config.getBoolean("debug");
         backlogThreshold = config.getInt("backlogThreshold", backlogThreshold);
+        poolMinSize = config.getInt("poolMinSize", poolMinSize);
+        poolMaxSize = config.getInt("poolMaxSize", poolMaxSize);
+        poolConnectionTimeout = config.getLong("poolConnectionTimeout", poolConnectionTimeout);
+        poolIdleTimeout = config.getLong("poolIdleTimeout", poolIdleTimeout);
+        poolMaxLifetime = config.getLong("poolMaxLifetime", poolMaxLifetime);
+        poolLeakDetectionThreshold = config.getLong("poolLeakDetectionThreshold", poolLeakDetectionThreshold);
+        poolValidationInterval = config.getLong("poolValidationInterval", poolValidationInterval);
+        poolKeepaliveInterval = config.getLong("poolKeepaliveInterval", poolKeepaliveInterval);
+        statementCacheSize = config.getInt("statementCacheSize", statementCacheSize);
+        if (config.isSet("serverPrepStmts")) serverPrepStmts = config.getBoolean("serverPrepStmts");
+        if (config.isSet("rewriteBatchedStatements")) rewriteBatchedStatements = config.getBoolean("rewriteBatchedStatements");
+        asyncWorkers = config.getInt("asyncWorkers", asyncWorkers);
+        asyncQueueDepth = config.getInt("asyncQueueDepth", asyncQueueDepth);
+        String cPolicy = config.getString("asyncOverflowPolicy");
+        if (cPolicy != null && !cPolicy.isEmpty()) {
+            try {
+                asyncOverflowPolicy = SQLOverflowPolicy.valueOf(cPolicy.toUpperCase());
+            } catch (IllegalArgumentException iae) {
+                Bukkit.getLogger().warning("[SQL] " + name + ": Unknown asyncOverflowPolicy: " + cPolicy
+                                           + ", using " + asyncOverflowPolicy);
+            }
+        }
+        if (config.isSet("asyncVirtualThreads")) asyncVirtualThreads = config.getBoolean("asyncVirtualThreads");
+        callbackBudget = config.getLong("callbackBudget", callbackBudget);
+        asyncShutdownTimeout = config.getLong("asyncShutdownTimeout", asyncShutdownTimeout);
+        asyncBatchSize = config.getInt("asyncBatchSize", asyncBatchSize);
+        saveChunkSize = config.getInt("saveChunkSize", saveChunkSize);
+        saveChunkBytes = config.getLong("saveChunkBytes", saveChunkBytes);
+        deleteChunkSize = config.getInt("deleteChunkSize", deleteChunkSize);
+        inListChunkSize = config.getInt("inListChunkSize", inListChunkSize);
+        streamFetchSize = config.getInt("streamFetchSize", streamFetchSize);
+        asyncBatchWindow = config.getLong("asyncBatchWindow", asyncBatchWindow);
+        writeBehindInterval = config.getLong("writeBehindInterval", writeBehindInterval);
+        if (config.isSet("replicas")) {
+            List<String> list = new ArrayList<>();
+            for (String it : config.getStringList("replicas")) {
+                if (it != null && !it.isEmpty()) list.add(it);
+            }
+            replicas = List.copyOf(list);
+        }
+        replicaStickiness = config.getLong("replicaStickiness", replicaStickiness);
     }
 
     public String getUrl() {
-        return "jdbc:mysql://" + host + ":" + port + "/" + database;
+        return "jdbc:mysql://" + host + ":" + port + "/" + database + getUrlOptions();
+    }
+
+    /**
+     * Get the url of a replica.  The port defaults to the port of the
+     * primary server.
+     */
+    public String getReplicaUrl(String replica) {
+        return replica.contains(":")
+            ? "jdbc:mysql://" + replica + "/" + database + getUrlOptions()
+            : "jdbc:mysql://" + replica + ":" + port + "/" + database + getUrlOptions();
+    }
+
+    /**
+     * Get the connection properties of the url, starting with the
+     * question mark, or the empty string.
+     */
+    private String getUrlOptions() {
+        List<String> options = new ArrayList<>();
+        if (serverPrepStmts) {
+            options.add("useServerPrepStmts=true");
+            options.add("cachePrepStmts=true");
+        }
+        if (rewriteBatchedStatements) {
+            options.add("rewriteBatchedStatements=true");
+        }
+        return options.isEmpty() ? "" : "?" + String.join("&", options);
     }
 
     @Override
@@ -1,7 +1,6 @@
 package com.winthier.sql;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -33,6 +32,8 @@ public final class SQLColumn {
     private Method setterMethod;
     @Getter private String keyName;
     @Getter private String uniqueKeyName;
+    /** The constants of an enum column, fetched once. */
+    private final Object[] enumConstants;
 
     protected SQLColumn(final SQLTable table, final Field field) {
         this.table = table;
@@ -58,6 +59,7 @@ public final class SQLColumn {
             this.unique = this.id;
         }
         type = SQLType.of(field);
+        enumConstants = type == SQLType.ENUM ? fieldType.getEnumConstants() : null;
         String typeDefinition = null;
         for (Annotation annotation : field.getDeclaredAnnotations()) {
             if (annotation instanceof SQLRow.LongText) {
@@ -206,16 +208,7 @@ public final class SQLColumn {
                 if (num == 0 && result.wasNull()) {
                     value = null;
                 } else {
-                    try {
-                        Method method = fieldType.getMethod("values");
-                        Object arr = method.invoke(null);
-                        value = Array.get(arr, num);
-                    } catch (Exception e) {
-                        table.getDatabase().getPlugin().getLogger()
-                            .warning("Error loading enum from " + table.getTableName() + "." + columnName);
-                        e.printStackTrace();
-                        value = null;
-                    }
+                    value = getEnumConstant(num);
                 }
                 break;
             case BLOB:
@@ -243,6 +236,13 @@ public final class SQLColumn {
         }
     }
 
+    private Object getEnumConstant(int ordinal) {
+        if (ordinal >= 0 && ordinal < enumConstants.length) return enumConstants[ordinal];
+        table.getDatabase().getPlugin().getLogger()
+            .warning("Error loading enum from " + table.getTableName() + "." + columnName + ": ordinal " + ordinal);
+        return null;
+    }
+
     public Object getObject(Connection connection, ResultSet result) {
         try {
             switch (type) {
@@ -260,16 +260,7 @@ public final class SQLColumn {
                 if (num == 0 && result.wasNull()) {
                     return null;
                 } else {
-                    try {
-                        Method method = fieldType.getMethod("values");
-                        Object arr = method.invoke(null);
-                        return Array.get(arr, num);
-                    } catch (Exception e) {
-                        table.getDatabase().getPlugin().getLogger()
-                            .warning("Error loading enum from " + table.getTableName() + "." + columnName);
-                        e.printStackTrace();
-                        return null;
-                    }
+                    return getEnumConstant(num);
                 }
             case REFERENCE:
                 num = result.getInt(getColumnName());
@@ -288,67 +279,37 @@ public final class SQLColumn {
     }
 
     /**
-     * Create a VALUE assignment for
-     * ```
-     * INSERT INTO `tblName` (columnNames) VALUES (...), (...)
-     * ```
-     * kind of statements.  The statement will be compiled later, with
-     * question mark placeholders.
-     * @param instance The SQLRow instance
-     * @param fragments The list of Strings to add to, with placeholder
-     * @param values The list of object values.
+     * Get the value of this column in an instance the way it is bound
+     * to a statement placeholder: references become their id and
+     * enums their ordinal.  Null stays null and is bound as NULL, so
+     * the SQL of a statement does not depend on its values.
      */
-    protected void createSaveFragment(SQLRow instance, StringBuilder sb, List<Object> values) {
-        Object value = getValue(instance);
-        if (value == null) {
-            sb.append("NULL");
-        } else {
-            sb.append("?");
-            if (type == SQLType.REFERENCE) {
-                SQLTable<? extends SQLRow> refTable = table.getDatabase().findTable(fieldType);
-                if (refTable.getIdColumn() == null) {
-                    throw new NullPointerException("Referenced table has no id column: " + value.getClass().getName());
-                }
-                if (!(value instanceof SQLRow row)) {
-                    throw new IllegalArgumentException("Required type " + fieldType.getName() + " (SQLRow)"
-                                                       + ", got " + value.getClass().getName());
-                }
-                Object refId = refTable.getIdColumn().getValue(row);
-                if (refId == null) throw new NullPointerException("Referenced table has no id: " + value.getClass().getName() + ": " + value);
-                values.add(refId);
-            } else if (type == SQLType.ENUM) {
-                values.add(((Enum) value).ordinal());
-            } else {
-                values.add(value);
-            }
-        }
+    protected Object getStatementValue(SQLRow instance) {
+        return toStatementValue(getValue(instance));
     }
 
     /**
-     * Note that this wants the value instead of the instance, unlike the above!
+     * Convert a value of this column the way getStatementValue()
+     * does.
      */
-    protected String createSetFragment(Object value, List<Object> values) {
-        if (value == null) {
-            return "`" + columnName + "` = NULL";
-        } else {
-            if (type == SQLType.REFERENCE) {
-                SQLTable<? extends SQLRow> refTable = table.getDatabase().findTable(fieldType);
-                if (refTable.getIdColumn() == null) {
-                    throw new NullPointerException("Referenced table has no id column: " + value.getClass().getName());
-                }
-                if (!(value instanceof SQLRow row)) {
-                    throw new IllegalArgumentException("Required type " + fieldType.getName() + " (SQLRow)"
-                                                       + ", got " + value.getClass().getName());
-                }
-                Object refId = refTable.getIdColumn().getValue(row);
-                if (refId == null) throw new NullPointerException("Referenced table has no id: " + value.getClass().getName() + ": " + value);
-                values.add(refId);
-            } else if (type == SQLType.ENUM) {
-                values.add(((Enum) value).ordinal());
-            } else {
-                values.add(value);
+    protected Object toStatementValue(Object value) {
+        if (value == null) return null;
+        if (type == SQLType.REFERENCE) {
+            SQLTable<? extends SQLRow> refTable = table.getDatabase().findTable(fieldType);
+            if (refTable.getIdColumn() == null) {
+                throw new NullPointerException("Referenced table has no id column: " + value.getClass().getName());
             }
-            return "`" + columnName + "` = ?";
+            if (!(value instanceof SQLRow row)) {
+                throw new IllegalArgumentException("Required type " + fieldType.getName() + " (SQLRow)"
+                                                   + ", got " + value.getClass().getName());
+            }
+            Object refId = refTable.getIdColumn().getValue(row);
+            if (refId == null) throw new NullPointerException("Referenced table has no id: " + value.getClass().getName() + ": " + value);
+            return refId;
+        } else if (type == SQLType.ENUM) {
+            return ((Enum) value).ordinal();
+        } else {
+            return value;
         }
     }
 
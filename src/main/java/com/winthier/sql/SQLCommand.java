@@ -62,7 +62,15 @@ public final class SQLCommand extends AbstractCommand<SQLPlugin> {
                                     space(),
                                     text("global", GRAY), eq, text(database.determineGlobalConfigFilename()),
                                     space(),
-                                    text("tables", GRAY), eq, text(database.getTables().size())));
+                                    text("tables", GRAY), eq, text(database.getTables().size()),
+                                    space(),
+                                    text("backlog", GRAY), eq, text(database.getBacklogSize()),
+                                    space(),
+                                    text("rejected", GRAY), eq, text(database.getRejectedCount()),
+                                    space(),
+                                    text("dropped", GRAY), eq, text(database.getDroppedCount()),
+                                    space(),
+                                    text("coalesced", GRAY), eq, text(database.getCoalescedCount())));
         }
     }
 
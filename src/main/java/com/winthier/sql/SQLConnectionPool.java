@@ -0,0 +1,524 @@
+package com.winthier.sql;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded pool of JDBC connections to one database.
+ *
+ * Connections are opened lazily up to the maximum size and handed
+ * out via borrow().  Every borrowed connection must be given back
+ * via release().  A background housekeeper evicts idle and expired
+ * connections, keeps the minimum size and reports leaked leases.
+ *
+ * Connections are only validated on borrow if they have not been
+ * used or validated within the validation interval.  Idle
+ * connections are pinged in the background instead.
+ *
+ * Pinned connections, which are held for a long time, count against
+ * the maximum size like any other, but may take at most all but one
+ * of them, so holding them can never starve the borrowers of short
+ * leases entirely.  A shared pool is resized as its users come and
+ * go, see setMaxSize().
+ */
+final class SQLConnectionPool {
+    private static final long HOUSEKEEPING_INTERVAL = 30_000L;
+    private final String name;
+    private final Logger logger;
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    /** The maximum of connections, pinned or not. */
+    private int maxSize;
+    private final long connectionTimeout;
+    private final long idleTimeout;
+    private final long maxLifetime;
+    private final long leakDetectionThreshold;
+    private final long validationInterval;
+    private final long keepaliveInterval;
+    private final int statementCacheSize;
+    /** Idle connections, most recently used first. */
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+    private final Map<Connection, PooledConnection> leased = new IdentityHashMap<>();
+    private final ScheduledExecutorService housekeeper;
+    /** Idle plus leased plus currently opening. */
+    private int total;
+    /** Leased pinned connections, plus pinned ones being opened. */
+    private int pinnedCount;
+    private boolean closed;
+    /** The connection of the primary thread, see getPrimaryConnection(). */
+    private volatile Connection primary;
+    private volatile long primaryUsed;
+
+    private static final class PooledConnection {
+        private final Connection connection;
+        private final long createdAt = System.currentTimeMillis();
+        private long lastUsed = createdAt;
+        private long lastValidated = createdAt;
+        private long leasedAt;
+        private Thread leaseThread;
+        private Exception leaseTrace;
+        private boolean pinned;
+        private boolean leakReported;
+
+        PooledConnection(final Connection connection) {
+            this.connection = connection;
+        }
+
+        boolean isExpired(long now, long maxLifetime) {
+            return maxLifetime > 0L && now - createdAt > maxLifetime;
+        }
+
+        long getLastAlive() {
+            return Math.max(lastUsed, lastValidated);
+        }
+    }
+
+    SQLConnectionPool(final String name, final Logger logger, final Config config) {
+        this(name, logger, config, config.getUrl());
+    }
+
+    /**
+     * Create a pool with the settings of a config but a different
+     * url, such as that of a replica.
+     */
+    SQLConnectionPool(final String name, final Logger logger, final Config config, final String url) {
+        this.name = name;
+        this.logger = logger;
+        this.url = url;
+        this.user = config.getUser();
+        this.password = config.getPassword();
+        this.maxSize = Math.max(2, config.getPoolMaxSize());
+        this.minSize = Math.max(0, Math.min(maxSize, config.getPoolMinSize()));
+        this.connectionTimeout = config.getPoolConnectionTimeout();
+        this.idleTimeout = config.getPoolIdleTimeout();
+        this.maxLifetime = config.getPoolMaxLifetime();
+        this.leakDetectionThreshold = config.getPoolLeakDetectionThreshold();
+        this.validationInterval = config.getPoolValidationInterval();
+        this.keepaliveInterval = config.getPoolKeepaliveInterval();
+        this.statementCacheSize = config.getStatementCacheSize();
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(run -> {
+                Thread thread = new Thread(run, "SQL-" + name + "-Pool");
+                thread.setDaemon(true);
+                return thread;
+            });
+        housekeeper.scheduleWithFixedDelay(this::houseKeeping, HOUSEKEEPING_INTERVAL, HOUSEKEEPING_INTERVAL, TimeUnit.MILLISECONDS);
+        if (keepaliveInterval > 0L) {
+            housekeeper.scheduleWithFixedDelay(this::keepalive, keepaliveInterval, keepaliveInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Change the maximum size, for example when a database starts or
+     * stops sharing this pool.  It is at least two, so there is
+     * always room for a pin and a short lease.  Surplus connections
+     * are closed as they are released.
+     */
+    public synchronized void setMaxSize(int size) {
+        maxSize = Math.max(2, size);
+        notifyAll();
+    }
+
+    /**
+     * The number of connections which could be borrowed right now
+     * without waiting, idle or yet to be opened.
+     */
+    public synchronized int getAvailableCount() {
+        return Math.max(0, maxSize - leased.size());
+    }
+
+    /**
+     * Determine if a config has the same settings as this pool, apart
+     * from its size.  A shared pool keeps the settings of the config
+     * which created it.
+     */
+    public boolean hasSettingsOf(Config config) {
+        return Math.max(0, Math.min(maxSize, config.getPoolMinSize())) == minSize
+            && config.getPoolConnectionTimeout() == connectionTimeout
+            && config.getPoolIdleTimeout() == idleTimeout
+            && config.getPoolMaxLifetime() == maxLifetime
+            && config.getPoolLeakDetectionThreshold() == leakDetectionThreshold
+            && config.getPoolValidationInterval() == validationInterval
+            && config.getPoolKeepaliveInterval() == keepaliveInterval
+            && config.getStatementCacheSize() == statementCacheSize;
+    }
+
+    /**
+     * Borrow a connection, opening a new one if none are idle and
+     * the pool is not full.  Otherwise wait for a release until the
+     * connection timeout runs out.
+     */
+    public Connection borrow() throws SQLException {
+        return borrow(false);
+    }
+
+    /**
+     * Get the connection reserved for the primary thread.  Everybody
+     * using this pool shares it, which is safe because the primary
+     * thread runs one statement at a time.  It is borrowed once and
+     * kept until it breaks or expires, and only validated if it has
+     * not been used for a while.
+     */
+    public Connection getPrimaryConnection() throws SQLException {
+        Connection connection = primary;
+        if (connection != null && isExpired(connection)) {
+            release(connection);
+            connection = null;
+        } else if (connection != null && needsValidation(primaryUsed) && !connection.isValid(1)) {
+            invalidate(connection);
+            connection = null;
+        }
+        if (connection == null) {
+            connection = borrowPinned();
+            primary = connection;
+        }
+        primaryUsed = System.currentTimeMillis();
+        return connection;
+    }
+
+    /**
+     * Borrow a connection which is meant to be held on to for a long
+     * time.  Pinned connections are exempt from leak detection.  If
+     * all but one connection are pinned already, wait like borrow().
+     */
+    public Connection borrowPinned() throws SQLException {
+        return borrow(true);
+    }
+
+    private Connection borrow(boolean pinned) throws SQLException {
+        final long deadline = System.currentTimeMillis() + connectionTimeout;
+        while (true) {
+            PooledConnection pooled = null;
+            synchronized (this) {
+                while (pooled == null) {
+                    if (closed) throw new SQLException("Connection pool closed: " + name);
+                    if (!pinned || pinnedCount < maxSize - 1) {
+                        pooled = idle.pollFirst();
+                        if (pooled != null) {
+                            if (pinned) pinnedCount += 1;
+                            break;
+                        }
+                        if (total < maxSize) {
+                            total += 1;
+                            if (pinned) pinnedCount += 1;
+                            break;
+                        }
+                    }
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0L) {
+                        throw new SQLTimeoutException("Connection pool exhausted: " + name
+                                                      + " (" + leased.size() + "/" + maxSize + " leased, "
+                                                      + pinnedCount + " pinned)");
+                    }
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for connection: " + name, ie);
+                    }
+                }
+            }
+            if (pooled == null) {
+                // We reserved a slot above
+                try {
+                    pooled = open();
+                } catch (SQLException sqle) {
+                    synchronized (this) {
+                        total -= 1;
+                        if (pinned) pinnedCount -= 1;
+                        notifyAll();
+                    }
+                    throw sqle;
+                }
+            } else {
+                final long now = System.currentTimeMillis();
+                if (pooled.isExpired(now, maxLifetime)
+                    || (now - pooled.getLastAlive() > validationInterval && !isValid(pooled))) {
+                    if (pinned) {
+                        synchronized (this) {
+                            pinnedCount -= 1;
+                        }
+                    }
+                    discard(pooled);
+                    continue;
+                }
+            }
+            synchronized (this) {
+                pooled.leasedAt = System.currentTimeMillis();
+                pooled.leaseThread = Thread.currentThread();
+                pooled.leaseTrace = leakDetectionThreshold > 0L && !pinned
+                    ? new Exception("Connection leased here")
+                    : null;
+                pooled.pinned = pinned;
+                pooled.leakReported = false;
+                leased.put(pooled.connection, pooled);
+            }
+            return pooled.connection;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, user, password);
+        SQLStatementCache.register(connection, statementCacheSize);
+        return new PooledConnection(connection);
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            if (!pooled.connection.isValid(1)) return false;
+            pooled.lastValidated = System.currentTimeMillis();
+            return true;
+        } catch (SQLException sqle) {
+            return false;
+        }
+    }
+
+    /**
+     * Determine if a connection was used or validated recently
+     * enough to skip validation.
+     */
+    public boolean needsValidation(long lastUsed) {
+        return System.currentTimeMillis() - lastUsed > validationInterval;
+    }
+
+    /**
+     * Give a borrowed connection back to the pool.  Connections
+     * which were closed or outlived their maximum lifetime are
+     * discarded instead.
+     */
+    public void release(Connection connection) {
+        if (connection == null) return;
+        final PooledConnection pooled;
+        synchronized (this) {
+            pooled = leased.remove(connection);
+            if (pooled != null && pooled.pinned) pinnedCount -= 1;
+        }
+        if (pooled == null) {
+            logger.warning("[SQL] Releasing unknown connection to pool " + name);
+            return;
+        }
+        boolean reusable;
+        try {
+            reusable = !connection.isClosed();
+            if (reusable && !connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException sqle) {
+            reusable = false;
+        }
+        pooled.leaseThread = null;
+        pooled.leaseTrace = null;
+        pooled.lastUsed = System.currentTimeMillis();
+        if (!reusable || pooled.isExpired(pooled.lastUsed, maxLifetime)) {
+            discard(pooled);
+            return;
+        }
+        synchronized (this) {
+            // The pool may have shrunk meanwhile
+            if (!closed && total <= maxSize) {
+                idle.addFirst(pooled);
+                notifyAll();
+                return;
+            }
+        }
+        discard(pooled);
+    }
+
+    /**
+     * Determine if a borrowed connection has outlived its maximum
+     * lifetime.  Holders of pinned connections should check this
+     * once in a while and swap their connection.
+     */
+    public synchronized boolean isExpired(Connection connection) {
+        PooledConnection pooled = leased.get(connection);
+        return pooled != null && pooled.isExpired(System.currentTimeMillis(), maxLifetime);
+    }
+
+    /**
+     * Discard a borrowed connection which turned out to be dead
+     * instead of returning it to the pool.
+     */
+    public void invalidate(Connection connection) {
+        if (connection == null) return;
+        if (connection == primary) primary = null;
+        final PooledConnection pooled;
+        synchronized (this) {
+            pooled = leased.remove(connection);
+            if (pooled != null && pooled.pinned) pinnedCount -= 1;
+        }
+        if (pooled == null) return;
+        discard(pooled);
+    }
+
+    /**
+     * Close a connection and free its slot.
+     */
+    private void discard(PooledConnection pooled) {
+        synchronized (this) {
+            total -= 1;
+            notifyAll();
+        }
+        SQLStatementCache.unregister(pooled.connection);
+        try {
+            pooled.connection.close();
+        } catch (SQLException sqle) {
+            logger.log(Level.FINE, "[SQL] Closing pooled connection", sqle);
+        }
+    }
+
+    private void houseKeeping() {
+        try {
+            final long now = System.currentTimeMillis();
+            List<PooledConnection> evicted = new ArrayList<>();
+            int missing;
+            synchronized (this) {
+                if (closed) return;
+                // Evict from the least recently used end.
+                for (Iterator<PooledConnection> iter = idle.descendingIterator(); iter.hasNext();) {
+                    PooledConnection pooled = iter.next();
+                    boolean idleTooLong = idleTimeout > 0L
+                        && now - pooled.lastUsed > idleTimeout
+                        && total - evicted.size() > minSize;
+                    if (idleTooLong || pooled.isExpired(now, maxLifetime)) {
+                        iter.remove();
+                        evicted.add(pooled);
+                    }
+                }
+                if (leakDetectionThreshold > 0L) {
+                    for (PooledConnection pooled : leased.values()) {
+                        if (pooled.pinned || pooled.leakReported) continue;
+                        if (now - pooled.leasedAt < leakDetectionThreshold) continue;
+                        pooled.leakReported = true;
+                        logger.log(Level.WARNING, "[SQL] Possible connection leak in pool " + name
+                                   + ": leased for " + (now - pooled.leasedAt) + "ms by " + pooled.leaseThread,
+                                   pooled.leaseTrace);
+                    }
+                }
+                missing = minSize - (total - evicted.size());
+            }
+            for (PooledConnection pooled : evicted) {
+                discard(pooled);
+            }
+            for (int i = 0; i < missing; i += 1) {
+                synchronized (this) {
+                    if (closed || total >= minSize) return;
+                    total += 1;
+                }
+                PooledConnection pooled;
+                try {
+                    pooled = open();
+                } catch (SQLException sqle) {
+                    synchronized (this) {
+                        total -= 1;
+                    }
+                    logger.log(Level.WARNING, "[SQL] Filling connection pool " + name, sqle);
+                    return;
+                }
+                synchronized (this) {
+                    if (!closed) {
+                        idle.addLast(pooled);
+                        notifyAll();
+                        continue;
+                    }
+                }
+                discard(pooled);
+            }
+        } catch (RuntimeException re) {
+            logger.log(Level.SEVERE, "[SQL] Connection pool housekeeping " + name, re);
+        }
+    }
+
+    /**
+     * Ping idle connections which have not been used or validated
+     * within the keepalive interval, so they are neither dropped by
+     * the server nor found dead when borrowed.
+     */
+    private void keepalive() {
+        try {
+            final long now = System.currentTimeMillis();
+            List<PooledConnection> stale = new ArrayList<>();
+            synchronized (this) {
+                if (closed) return;
+                for (Iterator<PooledConnection> iter = idle.iterator(); iter.hasNext();) {
+                    PooledConnection pooled = iter.next();
+                    if (now - pooled.getLastAlive() < keepaliveInterval) continue;
+                    // Take it out so nobody borrows it while we ping.
+                    iter.remove();
+                    stale.add(pooled);
+                }
+            }
+            for (PooledConnection pooled : stale) {
+                if (!isValid(pooled)) {
+                    discard(pooled);
+                    continue;
+                }
+                synchronized (this) {
+                    if (!closed) {
+                        idle.addLast(pooled);
+                        notifyAll();
+                        continue;
+                    }
+                }
+                discard(pooled);
+            }
+        } catch (RuntimeException re) {
+            logger.log(Level.SEVERE, "[SQL] Connection pool keepalive " + name, re);
+        }
+    }
+
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    public synchronized int getLeasedCount() {
+        return leased.size();
+    }
+
+    /**
+     * Close all idle connections and refuse further leases.  Leased
+     * connections are closed as they are released.
+     */
+    public void close() {
+        Connection thePrimary = primary;
+        if (thePrimary != null) {
+            primary = null;
+            release(thePrimary);
+        }
+        List<PooledConnection> list;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            list = new ArrayList<>(idle);
+            idle.clear();
+            notifyAll();
+        }
+        housekeeper.shutdownNow();
+        for (PooledConnection pooled : list) {
+            discard(pooled);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SQLConnectionPool(" + name + " idle=" + getIdleCount() + " leased=" + getLeasedCount() + "/" + maxSize + ")";
+    }
+}
@@ -5,25 +5,37 @@ import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.stream.Stream;
 import javax.persistence.PersistenceException;
 import javax.sql.rowset.CachedRowSet;
 import javax.sql.rowset.RowSetProvider;
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.bukkit.Bukkit;
 import org.bukkit.configuration.ConfigurationSection;
@@ -36,25 +48,43 @@ public final class SQLDatabase {
     private final JavaPlugin plugin;
     private final Map<Class<? extends SQLRow>, SQLTable<? extends SQLRow>> tables = new HashMap<>();
     private static final String SQL_CONFIG_FILE = "sql.yml";
+    /** The priority of async tasks on collections of rows. */
+    private static final SQLPriority BULK_PRIORITY = SQLPriority.BACKGROUND;
     private boolean debug;
     private Config config;
-    private Connection primaryConnection;
+    /** The database this is an async() copy of, which owns the pools. */
+    @Getter(AccessLevel.NONE)
+    private final SQLDatabase origin;
+    private SQLConnectionPool connectionPool;
+    private boolean connectionPoolShared;
+    private List<SQLConnectionPool> replicaPools;
+    private final AtomicInteger replicaCounter = new AtomicInteger();
+    /** The last write time by table name, see chooseReplica(). */
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+    private SQLWriteBehind writeBehind;
     private Connection asyncConnection;
-    private LinkedBlockingQueue<Runnable> asyncQueue;
-    private BukkitTask asyncWorker = null;
-    private Thread asyncThread = null;
+    private long asyncConnectionUsed;
+    private final ThreadLocal<Connection> taskConnection = new ThreadLocal<>();
+    private volatile SQLExecutor asyncExecutor;
+    private List<BukkitTask> asyncWorkers = List.of();
     private Semaphore asyncSemaphore = new Semaphore(1);
     private boolean doStop = false;
+    private volatile long backlogWarningTime;
+    private Executor completionExecutor = Runnable::run;
+    private final SQLDispatcher dispatcher = new SQLDispatcher(this);
+    private static final long BACKLOG_WARNING_INTERVAL = 10_000L;
 
     // --- Constructors
 
     public SQLDatabase(final JavaPlugin plugin) {
         this.plugin = plugin;
+        this.origin = null;
     }
 
     public SQLDatabase(final JavaPlugin plugin, final Config config) {
         this.plugin = plugin;
         this.config = config;
+        this.origin = null;
     }
 
     public Config getConfig() {
@@ -127,9 +157,16 @@ public final class SQLDatabase {
     private SQLDatabase(final SQLDatabase other) {
         plugin = other.plugin;
         config = other.getConfig();
+        origin = other.origin != null ? other.origin : other;
         debug = other.debug;
+        completionExecutor = other.completionExecutor;
     }
 
+    /**
+     * Make a copy with its own async connection.  It uses the pools
+     * of this database, so copies which are never closed do not grow
+     * them.
+     */
     public SQLDatabase async() {
         SQLDatabase cpy = new SQLDatabase(this);
         for (Class<? extends SQLRow> clz : tables.keySet()) {
@@ -216,7 +253,7 @@ public final class SQLDatabase {
     }
 
     public <E extends SQLRow> E find(Class<E> clazz, int id) {
-        return getTable(clazz).find(getConnection(), id);
+        return withReadConnection(getTable(clazz), false, connection -> getTable(clazz).find(connection, id));
     }
 
     // --- API: Save
@@ -241,196 +278,370 @@ public final class SQLDatabase {
         return table.update(connection, instance, columnNames);
     }
 
+    private <E extends SQLRow> int[] update(Connection connection, Collection<E> collection, Set<String> columnNames) {
+        if (collection.isEmpty()) return new int[0];
+        E any = collection.iterator().next();
+        SQLTable<E> table = getTable(any);
+        return table.update(connection, collection, columnNames);
+    }
+
     public <E extends SQLRow> int saveIgnore(E instance) {
-        return save(getConnection(), instance, true, true, null);
+        return withConnection(connection -> save(connection, instance, true, true, null));
     }
 
     public <E extends SQLRow> int saveIgnore(Collection<E> instances) {
-        return save(getConnection(), instances, true, true, null);
+        return withConnection(connection -> save(connection, instances, true, true, null));
     }
 
     public <E extends SQLRow> void saveIgnoreAsync(E instance, Consumer<Integer> callback) {
-        scheduleAsyncTask(() -> {
-                int result = save(getAsyncConnection(), instance, true, true, null);
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        saveAsync(instance, true, true, null, callback);
     }
 
     public <E extends SQLRow> void saveIgnoreAsync(Collection<E> instances, Consumer<Integer> callback) {
-        scheduleAsyncTask(() -> {
-                int result = save(getAsyncConnection(), instances, true, true, null);
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        supplyAsync(asyncKey(instances), BULK_PRIORITY, () -> withConnection(connection -> save(connection, instances, true, true, null)), callback);
     }
 
     public <E extends SQLRow> int save(E instance) {
-        return save(getConnection(), instance, false, true, null);
+        return withConnection(connection -> save(connection, instance, false, true, null));
     }
 
     public <E extends SQLRow> int save(Collection<E> instances) {
-        return save(getConnection(), instances, false, true, null);
+        return withConnection(connection -> save(connection, instances, false, true, null));
     }
 
     public <E extends SQLRow> void saveAsync(E instance, Consumer<Integer> callback) {
-        scheduleAsyncTask(() -> {
-                int result = save(getAsyncConnection(), instance, false, true, null);
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        saveAsync(instance, false, true, null, callback);
     }
 
     public <E extends SQLRow> void saveAsync(Collection<E> instances, Consumer<Integer> callback) {
-        scheduleAsyncTask(() -> {
-                int result = save(getAsyncConnection(), instances, false, true, null);
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        supplyAsync(asyncKey(instances), BULK_PRIORITY, () -> withConnection(connection -> save(connection, instances, false, true, null)), callback);
     }
 
     public <E extends SQLRow> int save(E instance, String... fields) {
-        return save(getConnection(), instance, false, true, Set.of(fields));
+        return withConnection(connection -> save(connection, instance, false, true, Set.of(fields)));
     }
 
     public <E extends SQLRow> int save(Collection<E> instances, String... fields) {
-        return save(getConnection(), instances, false, true, Set.of(fields));
+        return withConnection(connection -> save(connection, instances, false, true, Set.of(fields)));
     }
 
     public <E extends SQLRow> int save(Collection<E> instances, Set<String> fields) {
-        return save(getConnection(), instances, false, true, fields);
+        return withConnection(connection -> save(connection, instances, false, true, fields));
     }
 
     public <E extends SQLRow> void saveAsync(E instance, Consumer<Integer> callback, String... fields) {
-        scheduleAsyncTask(() -> {
-                int result = save(getAsyncConnection(), instance, false, true, Set.of(fields));
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        saveAsync(instance, false, true, Set.of(fields), callback);
     }
 
     public <E extends SQLRow> void saveAsync(Collection<E> instances, Consumer<Integer> callback, String... fields) {
-        scheduleAsyncTask(() -> {
-                int result = save(getAsyncConnection(), instances, false, true, Set.of(fields));
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        supplyAsync(asyncKey(instances), BULK_PRIORITY, () -> withConnection(connection -> save(connection, instances, false, true, Set.of(fields))), callback);
     }
 
     public <E extends SQLRow> void saveAsync(E instance, Set<String> fields, Consumer<Integer> callback) {
-        scheduleAsyncTask(() -> {
-                int result = save(getAsyncConnection(), instance, false, true, fields);
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        saveAsync(instance, false, true, fields, callback);
     }
 
     public <E extends SQLRow> void saveAsync(Collection<E> instances, Set<String> fields, Consumer<Integer> callback) {
-        scheduleAsyncTask(() -> {
-                int result = save(getAsyncConnection(), instances, false, true, fields);
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        supplyAsync(asyncKey(instances), BULK_PRIORITY, () -> withConnection(connection -> save(connection, instances, false, true, fields)), callback);
     }
 
     public <E extends SQLRow> void saveIgnoreAsync(E instance, Set<String> fields, Consumer<Integer> callback) {
-        scheduleAsyncTask(() -> {
-                int result = save(getAsyncConnection(), instance, true, true, fields);
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        saveAsync(instance, true, true, fields, callback);
     }
 
     public <E extends SQLRow> void saveIgnoreAsync(Collection<E> instances, Set<String> fields, Consumer<Integer> callback) {
-        scheduleAsyncTask(() -> {
-                int result = save(getAsyncConnection(), instances, true, true, fields);
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        supplyAsync(asyncKey(instances), BULK_PRIORITY, () -> withConnection(connection -> save(connection, instances, true, true, fields)), callback);
     }
 
     public <E extends SQLRow> int update(E instance, String... fields) {
-        return update(getConnection(), instance, Set.of(fields));
+        return withConnection(connection -> update(connection, instance, Set.of(fields)));
+    }
+
+    /**
+     * Update many rows of one table in a single batch.  Unlike single
+     * row updates, this bypasses write-behind.
+     * @return the number of affected rows for each instance
+     */
+    public <E extends SQLRow> int[] update(Collection<E> instances, String... fields) {
+        return withConnection(connection -> update(connection, instances, Set.of(fields)));
+    }
+
+    public <E extends SQLRow> void updateAsync(Collection<E> instances, Consumer<int[]> callback, String... fields) {
+        supplyAsync(asyncKey(instances), BULK_PRIORITY, () -> withConnection(connection -> update(connection, instances, Set.of(fields))), callback);
     }
 
     public <E extends SQLRow> void updateAsync(E instance, Consumer<Integer> callback, String... fields) {
-        scheduleAsyncTask(() -> {
-                int result = update(getAsyncConnection(), instance, Set.of(fields));
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        updateAsync(instance, Set.of(fields), callback);
     }
 
     public <E extends SQLRow> void updateAsync(E instance, Set<String> fields, Consumer<Integer> callback) {
-        scheduleAsyncTask(() -> {
-                int result = update(getAsyncConnection(), instance, fields);
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        final SQLTable<E> table = getTable(instance);
+        if (table.isWriteBehind()) {
+            getWriteBehind().add(table, instance, true, fields, callbackVia(callback), this::reportAsyncError);
+        } else {
+            submitAsyncTask(updateTask(instance, fields, callbackVia(callback), this::reportAsyncError));
+        }
     }
 
     public <E extends SQLRow> int insert(E instance) {
-        return save(getConnection(), instance, false, false, null);
+        return withConnection(connection -> save(connection, instance, false, false, null));
     }
 
     public <E extends SQLRow> int insert(Collection<E> instances) {
-        return save(getConnection(), instances, false, false, null);
+        return withConnection(connection -> save(connection, instances, false, false, null));
     }
 
     public <E extends SQLRow> int insertIgnore(E instance) {
-        return save(getConnection(), instance, true, false, null);
+        return withConnection(connection -> save(connection, instance, true, false, null));
     }
 
     public <E extends SQLRow> int insertIgnore(Collection<E> instances) {
-        return save(getConnection(), instances, true, false, null);
+        return withConnection(connection -> save(connection, instances, true, false, null));
     }
 
     public <E extends SQLRow> void insertAsync(E instance, Consumer<Integer> callback) {
-        scheduleAsyncTask(() -> {
-                int result = save(getAsyncConnection(), instance, false, false, null);
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        saveAsync(instance, false, false, null, callback);
     }
 
     public <E extends SQLRow> void insertAsync(Collection<E> instances, Consumer<Integer> callback) {
-        scheduleAsyncTask(() -> {
-                int result = save(getAsyncConnection(), instances, false, false, null);
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        supplyAsync(asyncKey(instances), BULK_PRIORITY, () -> withConnection(connection -> save(connection, instances, false, false, null)), callback);
     }
 
     public <E extends SQLRow> void insertIgnoreAsync(E instance, Consumer<Integer> callback) {
-        scheduleAsyncTask(() -> {
-                int result = save(getAsyncConnection(), instance, true, false, null);
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        saveAsync(instance, true, false, null, callback);
     }
 
     public <E extends SQLRow> void insertIgnoreAsync(Collection<E> instances, Consumer<Integer> callback) {
-        scheduleAsyncTask(() -> {
-                int result = save(getAsyncConnection(), instances, true, false, null);
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        supplyAsync(asyncKey(instances), BULK_PRIORITY, () -> withConnection(connection -> save(connection, instances, true, false, null)), callback);
+    }
+
+    // --- API: Bulk save
+
+    /**
+     * Internal bulk save helper.  The rows are written in chunks as
+     * they come, see SQLTable#save(Connection, Iterator, ...).  There
+     * is no retry on a lost connection, because the iterator cannot
+     * be rewound.
+     */
+    private <E extends SQLRow> int save(Iterator<E> instances, boolean doIgnore, boolean doUpdate, boolean transaction) {
+        if (!instances.hasNext()) return 0;
+        final E first = instances.next();
+        final SQLTable<E> table = getTable(first);
+        final Iterator<E> all = new Iterator<>() {
+            private boolean atFirst = true;
+
+            @Override
+            public boolean hasNext() {
+                return atFirst || instances.hasNext();
+            }
+
+            @Override
+            public E next() {
+                if (!atFirst) return instances.next();
+                atFirst = false;
+                return first;
+            }
+        };
+        return table.save(getConnection(), all, doIgnore, doUpdate, null, transaction);
+    }
+
+    public <E extends SQLRow> int save(Iterator<E> instances) {
+        return save(instances, false, true, false);
+    }
+
+    public <E extends SQLRow> int save(Iterator<E> instances, boolean transaction) {
+        return save(instances, false, true, transaction);
+    }
+
+    public <E extends SQLRow> int save(Stream<E> instances) {
+        return save(instances.iterator(), false, true, false);
+    }
+
+    public <E extends SQLRow> int save(Stream<E> instances, boolean transaction) {
+        return save(instances.iterator(), false, true, transaction);
+    }
+
+    public <E extends SQLRow> int saveIgnore(Iterator<E> instances) {
+        return save(instances, true, true, false);
+    }
+
+    public <E extends SQLRow> int saveIgnore(Iterator<E> instances, boolean transaction) {
+        return save(instances, true, true, transaction);
+    }
+
+    public <E extends SQLRow> int saveIgnore(Stream<E> instances) {
+        return save(instances.iterator(), true, true, false);
+    }
+
+    public <E extends SQLRow> int saveIgnore(Stream<E> instances, boolean transaction) {
+        return save(instances.iterator(), true, true, transaction);
+    }
+
+    public <E extends SQLRow> int insert(Iterator<E> instances) {
+        return save(instances, false, false, false);
+    }
+
+    public <E extends SQLRow> int insert(Iterator<E> instances, boolean transaction) {
+        return save(instances, false, false, transaction);
+    }
+
+    public <E extends SQLRow> int insert(Stream<E> instances) {
+        return save(instances.iterator(), false, false, false);
+    }
+
+    public <E extends SQLRow> int insert(Stream<E> instances, boolean transaction) {
+        return save(instances.iterator(), false, false, transaction);
+    }
+
+    /**
+     * Single rows get the priority of their table.  Collections are
+     * bulk work and always run in the background, see BULK_PRIORITY.
+     */
+    private <E extends SQLRow> SQLPriority asyncPriority(E instance) {
+        return getTable(instance).getPriority();
+    }
+
+    /**
+     * Identifies a save or update of one row object.  Two of them
+     * with the same columns are interchangeable because both write
+     * the state of the object at the time they run.
+     */
+    private record CoalesceKey(SQLRow instance, String operation, Set<String> fields) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CoalesceKey that
+                && instance == that.instance
+                && operation.equals(that.operation)
+                && fields.equals(that.fields);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(instance) * 31 + operation.hashCode();
+        }
+    }
+
+    private static Object coalesceKey(SQLRow instance, String operation, Set<String> fields) {
+        return new CoalesceKey(instance, operation, fields != null ? fields : Set.of());
+    }
+
+    /**
+     * Create the async task which saves one row.  It describes the
+     * save so that compatible ones can share a statement, and can be
+     * coalesced unless it is a plain insert.
+     *
+     * Generated ids are handed out to the rows of a statement in
+     * order, which only works if every row without an id is really
+     * inserted.  Such a row can only be skipped or updated if the
+     * table has a unique key besides the id, or if the save ignores
+     * errors.  Such saves are never batched.  The others are, and
+     * new rows are then written with a plain insert.
+     */
+    private <E extends SQLRow> SQLTask<Integer> saveTask(E instance, boolean doIgnore, boolean doUpdate, Set<String> fields,
+                                                        Consumer<Integer> onResult, Consumer<Throwable> onError) {
+        final SQLTable<E> table = getTable(instance);
+        final SQLColumn idColumn = table.getIdColumn();
+        final boolean batchable = idColumn == null
+            || idColumn.getValue(instance) != null
+            || (!doIgnore && (!doUpdate || !table.hasUniqueKey()));
+        final Object coalesceKey = doUpdate
+            ? coalesceKey(instance, doIgnore ? "saveIgnore" : "save", fields)
+            : null;
+        final SQLTask<Integer> task = new SQLTask<>(table.getTableName(), table.getPriority(), coalesceKey,
+                                                    () -> withConnection(connection -> save(connection, instance, doIgnore, doUpdate, fields)),
+                                                    onResult, onError);
+        if (batchable) {
+            task.setSave(new SQLTask.Save(table, doIgnore, doUpdate, fields != null ? fields : Set.of()), instance);
+        }
+        return task;
+    }
+
+    private <E extends SQLRow> void saveAsync(E instance, boolean doIgnore, boolean doUpdate, Set<String> fields, Consumer<Integer> callback) {
+        saveLater(instance, doIgnore, doUpdate, fields, callbackVia(callback), this::reportAsyncError);
+    }
+
+    private <E extends SQLRow> CompletableFuture<Integer> saveFuture(E instance, boolean doIgnore, boolean doUpdate, Set<String> fields) {
+        final CompletableFuture<Integer> future = new CompletableFuture<>();
+        final Executor executor = completionExecutor;
+        saveLater(instance, doIgnore, doUpdate, fields, completeVia(executor, future), failVia(executor, future));
+        return future;
+    }
+
+    /**
+     * Queue the save of one row, or mark it dirty if its table is
+     * write-behind.  Inserts are never deferred.
+     */
+    private <E extends SQLRow> void saveLater(E instance, boolean doIgnore, boolean doUpdate, Set<String> fields,
+                                              Consumer<Integer> onResult, Consumer<Throwable> onError) {
+        final SQLTable<E> table = getTable(instance);
+        if (doUpdate && !doIgnore && table.isWriteBehind()) {
+            getWriteBehind().add(table, instance, false, fields, onResult, onError);
+        } else {
+            submitAsyncTask(saveTask(instance, doIgnore, doUpdate, fields, onResult, onError));
+        }
+    }
+
+    private <E extends SQLRow> SQLTask<Integer> updateTask(E instance, Set<String> fields,
+                                                          Consumer<Integer> onResult, Consumer<Throwable> onError) {
+        return new SQLTask<>(asyncKey(instance), asyncPriority(instance), coalesceKey(instance, "update", fields),
+                             () -> withConnection(connection -> update(connection, instance, fields)),
+                             onResult, onError);
+    }
+
+    // --- Utility: Write-behind
+
+    private synchronized SQLWriteBehind getWriteBehind() {
+        if (writeBehind == null) {
+            writeBehind = new SQLWriteBehind(plugin.getName(), getConfig().getWriteBehindInterval(), this::writeDirtyRow);
+        }
+        return writeBehind;
+    }
+
+    private SQLTask<Integer> dirtyRowTask(SQLWriteBehind.Dirty dirty) {
+        return dirty.isUpdate()
+            ? updateTask(dirty.getRow(), dirty.getFields(), dirty.getOnResult(), dirty.getOnError())
+            : saveTask(dirty.getRow(), false, true, dirty.getFields(), dirty.getOnResult(), dirty.getOnError());
+    }
+
+    private void writeDirtyRow(SQLWriteBehind.Dirty dirty) {
+        submitAsyncTask(dirtyRowTask(dirty));
+    }
+
+    /**
+     * Forget buffered writes of rows which are being deleted, so they
+     * do not bring them back.
+     */
+    private <E extends SQLRow> void discardDirty(E instance) {
+        if (writeBehind == null) return;
+        writeBehind.discard(getTable(instance), instance);
+    }
+
+    private <E extends SQLRow> void discardDirty(Collection<E> instances) {
+        if (writeBehind == null) return;
+        for (E instance : instances) {
+            writeBehind.discard(getTable(instance), instance);
+        }
+    }
+
+    /**
+     * The number of rows with buffered writes, see
+     * SQLRow.WriteBehind.
+     */
+    public int getDirtyRowCount() {
+        return writeBehind != null ? writeBehind.size() : 0;
+    }
+
+    /**
+     * The async ordering key of the table of an instance.
+     */
+    private <E extends SQLRow> Object asyncKey(E instance) {
+        return getTable(instance).getTableName();
+    }
+
+    private <E extends SQLRow> Object asyncKey(Collection<E> instances) {
+        return instances.isEmpty()
+            ? null
+            : asyncKey(instances.iterator().next());
     }
 
     // --- API: Delete
@@ -448,35 +659,106 @@ public final class SQLDatabase {
     }
 
     public <E extends SQLRow> int delete(E instance) {
-        return delete(getConnection(), instance);
+        discardDirty(instance);
+        return withConnection(connection -> delete(connection, instance));
     }
 
     public <E extends SQLRow> int delete(Collection<E> instances) {
-        return delete(getConnection(), instances);
+        discardDirty(instances);
+        return withConnection(connection -> delete(connection, instances));
     }
 
     public <E extends SQLRow> void deleteAsync(E instance, Consumer<Integer> callback) {
-        scheduleAsyncTask(() -> {
-                int result = delete(getAsyncConnection(), instance);
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        discardDirty(instance);
+        supplyAsync(asyncKey(instance), asyncPriority(instance), () -> withConnection(connection -> delete(connection, instance)), callback);
     }
 
     public <E extends SQLRow> void deleteAsync(Collection<E> instances, Consumer<Integer> callback) {
-        scheduleAsyncTask(() -> {
-                int result = delete(getAsyncConnection(), instances);
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                }
-            });
+        discardDirty(instances);
+        supplyAsync(asyncKey(instances), BULK_PRIORITY, () -> withConnection(connection -> delete(connection, instances)), callback);
+    }
+
+    // --- API: Futures
+
+    public <E extends SQLRow> CompletableFuture<E> findFuture(Class<E> clazz, int id) {
+        return supplyAsync(getTable(clazz).getTableName(), getTable(clazz).getPriority(), () -> find(clazz, id));
+    }
+
+    public <E extends SQLRow> CompletableFuture<Integer> saveFuture(E instance, String... fields) {
+        return saveFuture(instance, false, true, Set.of(fields));
+    }
+
+    public <E extends SQLRow> CompletableFuture<Integer> saveFuture(Collection<E> instances, String... fields) {
+        return supplyAsync(asyncKey(instances), BULK_PRIORITY, () -> withConnection(connection -> save(connection, instances, false, true, Set.of(fields))));
+    }
+
+    public <E extends SQLRow> CompletableFuture<Integer> saveIgnoreFuture(E instance, String... fields) {
+        return saveFuture(instance, true, true, Set.of(fields));
+    }
+
+    public <E extends SQLRow> CompletableFuture<Integer> saveIgnoreFuture(Collection<E> instances, String... fields) {
+        return supplyAsync(asyncKey(instances), BULK_PRIORITY, () -> withConnection(connection -> save(connection, instances, true, true, Set.of(fields))));
+    }
+
+    public <E extends SQLRow> CompletableFuture<Integer> updateFuture(E instance, String... fields) {
+        final CompletableFuture<Integer> future = new CompletableFuture<>();
+        final Executor executor = completionExecutor;
+        final SQLTable<E> table = getTable(instance);
+        if (table.isWriteBehind()) {
+            getWriteBehind().add(table, instance, true, Set.of(fields), completeVia(executor, future), failVia(executor, future));
+        } else {
+            submitAsyncTask(updateTask(instance, Set.of(fields), completeVia(executor, future), failVia(executor, future)));
+        }
+        return future;
+    }
+
+    public <E extends SQLRow> CompletableFuture<int[]> updateFuture(Collection<E> instances, String... fields) {
+        return supplyAsync(asyncKey(instances), BULK_PRIORITY, () -> withConnection(connection -> update(connection, instances, Set.of(fields))));
+    }
+
+    public <E extends SQLRow> CompletableFuture<Integer> insertFuture(E instance) {
+        return saveFuture(instance, false, false, null);
+    }
+
+    public <E extends SQLRow> CompletableFuture<Integer> insertFuture(Collection<E> instances) {
+        return supplyAsync(asyncKey(instances), BULK_PRIORITY, () -> withConnection(connection -> save(connection, instances, false, false, null)));
+    }
+
+    public <E extends SQLRow> CompletableFuture<Integer> insertIgnoreFuture(E instance) {
+        return saveFuture(instance, true, false, null);
+    }
+
+    public <E extends SQLRow> CompletableFuture<Integer> insertIgnoreFuture(Collection<E> instances) {
+        return supplyAsync(asyncKey(instances), BULK_PRIORITY, () -> withConnection(connection -> save(connection, instances, true, false, null)));
+    }
+
+    public <E extends SQLRow> CompletableFuture<Integer> deleteFuture(E instance) {
+        discardDirty(instance);
+        return supplyAsync(asyncKey(instance), asyncPriority(instance), () -> withConnection(connection -> delete(connection, instance)));
+    }
+
+    public <E extends SQLRow> CompletableFuture<Integer> deleteFuture(Collection<E> instances) {
+        discardDirty(instances);
+        return supplyAsync(asyncKey(instances), BULK_PRIORITY, () -> withConnection(connection -> delete(connection, instances)));
+    }
+
+    public CompletableFuture<Integer> executeUpdateFuture(String sql) {
+        return supplyAsync(null, SQLPriority.INTERACTIVE, () -> withConnection(connection -> executeUpdate(connection, sql)));
+    }
+
+    public CompletableFuture<ResultSet> executeQueryFuture(String sql) {
+        return supplyAsync(null, SQLPriority.INTERACTIVE, () -> withConnection(connection -> executeQuery(connection, sql)));
     }
 
     // --- API: Raw statements
 
     public int executeUpdate(String sql) {
-        try (Statement statement = getConnection().createStatement()) {
+        return withConnection(connection -> executeUpdate(connection, sql));
+    }
+
+    private int executeUpdate(Connection connection, String sql) {
+        markAllWritten();
+        try (Statement statement = connection.createStatement()) {
             debugLog(sql);
             return statement.executeUpdate(sql);
         } catch (SQLException sqle) {
@@ -485,21 +767,15 @@ public final class SQLDatabase {
     }
 
     public void executeUpdateAsync(String sql, Consumer<Integer> callback) {
-        scheduleAsyncTask(() -> {
-                try (Statement statement = getAsyncConnection().createStatement()) {
-                    debugLog(sql);
-                    int result = statement.executeUpdate(sql);
-                    if (callback != null) {
-                        Bukkit.getScheduler().runTask(plugin, () -> callback.accept(result));
-                    }
-                } catch (SQLException sqle) {
-                    throw new RuntimeException("plugin: " + plugin.getName(), sqle);
-                }
-            });
+        supplyAsync(null, SQLPriority.INTERACTIVE, () -> withConnection(connection -> executeUpdate(connection, sql)), callback);
     }
 
     public ResultSet executeQuery(String sql) {
-        try (Statement statement = getConnection().createStatement()) {
+        return withConnection(connection -> executeQuery(connection, sql));
+    }
+
+    private CachedRowSet executeQuery(Connection connection, String sql) {
+        try (Statement statement = connection.createStatement()) {
             debugLog(sql);
             try (ResultSet resultSet = statement.executeQuery(sql)) {
                 CachedRowSet cached = RowSetProvider.newFactory().createCachedRowSet();
@@ -512,8 +788,12 @@ public final class SQLDatabase {
     }
 
     public List<Map<String, Object>> executeSafeQuery(String sql) {
+        return withConnection(connection -> executeSafeQuery(connection, sql));
+    }
+
+    private List<Map<String, Object>> executeSafeQuery(Connection connection, String sql) {
         debugLog(sql);
-        try (Statement statement = getConnection().createStatement();
+        try (Statement statement = connection.createStatement();
              ResultSet resultSet = statement.executeQuery(sql)) {
             final List<Map<String, Object>> result = new ArrayList<>();
             final ResultSetMetaData meta = resultSet.getMetaData();
@@ -536,18 +816,7 @@ public final class SQLDatabase {
     }
 
     public void executeQueryAsync(String sql, Consumer<ResultSet> callback) {
-        scheduleAsyncTask(() -> {
-                try (Statement statement = getAsyncConnection().createStatement()) {
-                    debugLog(sql);
-                    try (ResultSet resultSet = statement.executeQuery(sql)) {
-                        CachedRowSet cached = RowSetProvider.newFactory().createCachedRowSet();
-                        cached.populate(resultSet);
-                        Bukkit.getScheduler().runTask(plugin, () -> callback.accept(cached));
-                    }
-                } catch (SQLException sqle) {
-                    throw new RuntimeException("plugin: " + plugin.getName(), sqle);
-                }
-            });
+        supplyAsync(null, SQLPriority.INTERACTIVE, () -> withConnection(connection -> executeQuery(connection, sql)), callback);
     }
 
     // --- Utility: Connection
@@ -556,36 +825,283 @@ public final class SQLDatabase {
         if (Bukkit.isPrimaryThread()) {
             return getPrimaryConnection();
         }
-        if (Thread.currentThread().equals(asyncThread)) {
-            return getAsyncConnection();
-        }
+        Connection connection = taskConnection.get();
+        if (connection != null) return connection;
         plugin.getLogger().warning("SQLDatabase.getConnection() called from neither primary nor async worker thread!");
         new Exception().printStackTrace();
         return getAsyncConnection();
     }
 
+    /**
+     * Get the connection pool.  With the SQL plugin present, the pool
+     * is owned by it and shared with every database on the same url
+     * and credentials.  Otherwise this database has its own.  Copies
+     * made by async() use the pool of their origin.
+     */
+    public synchronized SQLConnectionPool getConnectionPool() {
+        if (connectionPool == null) {
+            SQLPlugin sqlPlugin = getSQLPlugin();
+            if (origin != null) {
+                connectionPool = origin.getConnectionPool();
+                connectionPoolShared = true;
+            } else if (sqlPlugin != null) {
+                connectionPool = sqlPlugin.acquirePool(getConfig());
+                connectionPoolShared = true;
+            } else {
+                connectionPool = new SQLConnectionPool(plugin.getName(), plugin.getLogger(), getConfig());
+                connectionPoolShared = false;
+            }
+        }
+        return connectionPool;
+    }
+
+    /**
+     * Get the connection reserved for the primary thread, which is
+     * shared by all databases on the same pool.
+     */
     public Connection getPrimaryConnection() {
         try {
-            if (primaryConnection == null || !primaryConnection.isValid(1)) {
-                primaryConnection = DriverManager
-                    .getConnection(getConfig().getUrl(), getConfig().getUser(), getConfig().getPassword());
-            }
+            return getConnectionPool().getPrimaryConnection();
         } catch (SQLException sqle) {
             throw new RuntimeException("plugin: " + plugin.getName(), sqle);
         }
-        return primaryConnection;
     }
 
+    /**
+     * Get the connection of the async task running on the current
+     * thread.  Threads which are not running an async task share
+     * one connection borrowed from the pool.
+     */
     public Connection getAsyncConnection() {
+        Connection connection = taskConnection.get();
+        if (connection != null) return connection;
+        synchronized (this) {
+            asyncConnection = renewPinnedConnection(asyncConnection, asyncConnectionUsed);
+            asyncConnectionUsed = System.currentTimeMillis();
+            return asyncConnection;
+        }
+    }
+
+    private Connection renewPinnedConnection(Connection connection, long lastUsed) {
+        SQLConnectionPool pool = getConnectionPool();
+        try {
+            if (connection != null && pool.isExpired(connection)) {
+                pool.release(connection);
+                connection = null;
+            } else if (connection != null && pool.needsValidation(lastUsed) && !connection.isValid(1)) {
+                pool.invalidate(connection);
+                connection = null;
+            }
+            if (connection == null) {
+                connection = pool.borrowPinned();
+            }
+        } catch (SQLException sqle) {
+            throw new RuntimeException("plugin: " + plugin.getName(), sqle);
+        }
+        return connection;
+    }
+
+    /**
+     * Run an async task with a connection borrowed from the pool,
+     * which getConnection() and getAsyncConnection() will return
+     * while the task is running.
+     */
+    private void runAsyncTask(Runnable task) {
+        final SQLConnectionPool pool = getConnectionPool();
+        final Connection connection;
+        try {
+            connection = pool.borrow();
+        } catch (SQLException sqle) {
+            throw new RuntimeException("plugin: " + plugin.getName(), sqle);
+        }
+        taskConnection.set(connection);
+        try {
+            task.run();
+        } finally {
+            // The connection may have been replaced by withConnection()
+            pool.release(taskConnection.get());
+            taskConnection.remove();
+        }
+    }
+
+    /**
+     * Apply a function to the connection of the current thread.  If
+     * it fails because the connection turns out to be dead, the
+     * connection is replaced and the function is applied once more.
+     * This spares us from validating connections before every use.
+     */
+    public <T> T withConnection(Function<Connection, T> function) {
+        final Connection connection = getConnection();
         try {
-            if (asyncConnection == null || !asyncConnection.isValid(1)) {
-                asyncConnection = DriverManager
-                    .getConnection(getConfig().getUrl(), getConfig().getUser(), getConfig().getPassword());
+            return function.apply(connection);
+        } catch (RuntimeException re) {
+            if (!SQLUtil.isConnectionError(re)) throw re;
+            plugin.getLogger().warning("[SQL] Connection lost, retrying: " + re.getMessage());
+            replaceConnection(connection);
+            return function.apply(getConnection());
+        }
+    }
+
+    /**
+     * Throw away a dead connection so the next call to
+     * getConnection() on this thread yields a fresh one.
+     */
+    private void replaceConnection(Connection dead) {
+        SQLConnectionPool pool = getConnectionPool();
+        pool.invalidate(dead);
+        if (taskConnection.get() == dead) {
+            try {
+                taskConnection.set(pool.borrow());
+            } catch (SQLException sqle) {
+                taskConnection.remove();
+                throw new RuntimeException("plugin: " + plugin.getName(), sqle);
             }
+        }
+        synchronized (this) {
+            if (asyncConnection == dead) asyncConnection = null;
+        }
+    }
+
+    /**
+     * Get the pools of the configured read replicas, which may be
+     * empty.
+     */
+    public synchronized List<SQLConnectionPool> getReplicaPools() {
+        if (replicaPools == null && origin != null) {
+            replicaPools = origin.getReplicaPools();
+        } else if (replicaPools == null) {
+            List<SQLConnectionPool> list = new ArrayList<>();
+            SQLPlugin sqlPlugin = getSQLPlugin();
+            for (String replica : getConfig().getReplicas()) {
+                String url = getConfig().getReplicaUrl(replica);
+                list.add(sqlPlugin != null
+                         ? sqlPlugin.acquirePool(getConfig(), url)
+                         : new SQLConnectionPool(plugin.getName() + "@" + replica, plugin.getLogger(), getConfig(), url));
+            }
+            replicaPools = List.copyOf(list);
+        }
+        return replicaPools;
+    }
+
+    /**
+     * Remember that a table was written, so that reads of it stick to
+     * the primary server for a while.
+     */
+    protected void markWritten(SQLTable<?> table) {
+        if (getConfig().getReplicas().isEmpty()) return;
+        lastWrites.put(table.getTableName(), System.currentTimeMillis());
+    }
+
+    /**
+     * Mark every table written, because a raw statement may have
+     * written any of them.
+     */
+    protected void markAllWritten() {
+        if (getConfig().getReplicas().isEmpty()) return;
+        final long now = System.currentTimeMillis();
+        for (SQLTable<?> table : tables.values()) {
+            lastWrites.put(table.getTableName(), now);
+        }
+    }
+
+    /**
+     * Pick a replica pool to read a table from, in turn.  Yields null
+     * if there are no replicas, the table opts out, or the table was
+     * written within the stickiness period, so that we read our own
+     * writes.
+     */
+    private SQLConnectionPool chooseReplica(SQLTable<?> table) {
+        if (getConfig().getReplicas().isEmpty() || !table.isReadReplica()) return null;
+        Long lastWrite = lastWrites.get(table.getTableName());
+        if (lastWrite != null && System.currentTimeMillis() - lastWrite < getConfig().getReplicaStickiness()) {
+            return null;
+        }
+        List<SQLConnectionPool> pools = getReplicaPools();
+        if (pools.isEmpty()) return null;
+        return pools.get(Math.floorMod(replicaCounter.getAndIncrement(), pools.size()));
+    }
+
+    /**
+     * A connection borrowed for a long read, such as a streaming
+     * query.  Closing it gives it back to its pool.
+     */
+    protected record ReadLease(SQLConnectionPool pool, Connection connection) implements AutoCloseable {
+        @Override
+        public void close() {
+            pool.release(connection);
+        }
+
+        /**
+         * Throw the connection away instead, for example because it
+         * still has unread rows.  The connection is aborted first,
+         * which drops unread rows of a streaming query rather than
+         * reading them all out as closing would.
+         */
+        public void discard() {
+            try {
+                connection.abort(Runnable::run);
+            } catch (SQLException sqle) { }
+            pool.invalidate(connection);
+        }
+    }
+
+    /**
+     * Borrow a connection of its own for a long read, from a replica
+     * if possible.  It must be closed by the caller.
+     *
+     * An async task streaming from the primary server holds two
+     * connections of the pool at once, its own and this one.  The
+     * pool should have room for one extra connection per concurrent
+     * task, or streams wait for the pool timeout and fail.
+     * @param table the table being read
+     * @param primary true to read from the primary server regardless
+     */
+    protected ReadLease borrowReadConnection(SQLTable<?> table, boolean primary) {
+        final SQLConnectionPool replica = primary ? null : chooseReplica(table);
+        if (replica != null) {
+            try {
+                return new ReadLease(replica, replica.borrow());
+            } catch (SQLException sqle) {
+                plugin.getLogger().warning("[SQL] Replica unavailable, reading from primary: " + sqle.getMessage());
+            }
+        }
+        final SQLConnectionPool pool = getConnectionPool();
+        try {
+            return new ReadLease(pool, pool.borrow());
         } catch (SQLException sqle) {
             throw new RuntimeException("plugin: " + plugin.getName(), sqle);
         }
-        return asyncConnection;
+    }
+
+    /**
+     * Apply a read-only function to a connection, from a replica if
+     * possible.  If the replica is unavailable, the read falls back
+     * to the primary server.
+     * @param table the table being read
+     * @param primary true to read from the primary server regardless
+     */
+    protected <T> T withReadConnection(SQLTable<?> table, boolean primary, Function<Connection, T> function) {
+        final SQLConnectionPool pool = primary ? null : chooseReplica(table);
+        if (pool == null) return withConnection(function);
+        final Connection connection;
+        try {
+            connection = pool.borrow();
+        } catch (SQLException sqle) {
+            plugin.getLogger().warning("[SQL] Replica unavailable, reading from primary: " + sqle.getMessage());
+            return withConnection(function);
+        }
+        boolean dead = false;
+        try {
+            return function.apply(connection);
+        } catch (RuntimeException re) {
+            if (!SQLUtil.isConnectionError(re)) throw re;
+            plugin.getLogger().warning("[SQL] Replica connection lost, reading from primary: " + re.getMessage());
+            dead = true;
+            pool.invalidate(connection);
+        } finally {
+            if (!dead) pool.release(connection);
+        }
+        return withConnection(function);
     }
 
     protected void debugLog(Object o) {
@@ -596,54 +1112,205 @@ public final class SQLDatabase {
     // --- Utility: Async
 
     public void scheduleAsyncTask(Runnable task) {
+        scheduleAsyncTask(null, SQLPriority.INTERACTIVE, task);
+    }
+
+    public void scheduleAsyncTask(Object key, Runnable task) {
+        scheduleAsyncTask(key, SQLPriority.INTERACTIVE, task);
+    }
+
+    /**
+     * Schedule an async task with an ordering key, usually a table
+     * name, or a table name plus row id.  Tasks with the same key run
+     * in the order they were scheduled.  Tasks with different keys
+     * may run in parallel if there is more than one worker.
+     * @param key the ordering key, or null for the default key
+     * @param priority the priority class
+     * @param task the task
+     */
+    public void scheduleAsyncTask(Object key, SQLPriority priority, Runnable task) {
+        submitAsyncTask(new SQLTask<Void>(key, priority, null, () -> {
+                    task.run();
+                    return null;
+                }, null, this::reportAsyncError));
+    }
+
+    /**
+     * Put a task in the async queue.  Neither the primary thread nor
+     * a thread running a task ever waits for room, as the latter may
+     * be the one which would make room.  With the BLOCK policy, their
+     * tasks are rejected instead.
+     * @return false if the task was rejected
+     */
+    private boolean submitAsyncTask(SQLTask<?> task) {
         if (!plugin.isEnabled()) {
             plugin.getLogger().warning("[SQL] Attempt to schedule async tasks"
                                        + " while plugin is disabled!");
         }
-        if (asyncWorker == null) {
+        if (asyncExecutor == null) {
             synchronized (this) {
-                if (asyncWorker == null) {
-                    asyncQueue = new LinkedBlockingQueue<>();
-                    asyncWorker = Bukkit.getScheduler().runTaskAsynchronously(plugin, this::asyncWorkerTask);
+                if (asyncExecutor == null) {
+                    asyncExecutor = getConfig().isAsyncVirtualThreads()
+                        ? createVirtualThreadExecutor()
+                        : createWorkerExecutor();
                 }
             }
         }
         try {
-            asyncQueue.put(task);
+            return asyncExecutor.submit(task, !Bukkit.isPrimaryThread() && taskConnection.get() == null);
         } catch (InterruptedException ie) {
-            ie.printStackTrace();
+            Thread.currentThread().interrupt();
+            task.abandon(ie);
+            return false;
         }
     }
 
-    private void asyncWorkerTask() {
+    private void reportAsyncError(Throwable t) {
+        if (t instanceof RejectedExecutionException) {
+            plugin.getLogger().warning("[SQL] " + t.getMessage());
+        } else {
+            plugin.getLogger().log(Level.SEVERE, "[SQL] Async task failed", t);
+        }
+    }
+
+    // --- Utility: Futures
+
+    /**
+     * Schedule an async task and return a future of its result.  The
+     * future is completed via the completion executor, so dependent
+     * stages run there unless they specify their own executor.
+     * @param key the ordering key, see scheduleAsyncTask()
+     * @param priority the priority class
+     * @param supplier the task
+     */
+    public <T> CompletableFuture<T> supplyAsync(Object key, SQLPriority priority, Supplier<T> supplier) {
+        return supplyAsync(key, priority, null, supplier);
+    }
+
+    /**
+     * @param coalesceKey identifies tasks which make each other
+     * redundant, see SQLOverflowPolicy.COALESCE, or null
+     */
+    private <T> CompletableFuture<T> supplyAsync(Object key, SQLPriority priority, Object coalesceKey, Supplier<T> supplier) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final Executor executor = completionExecutor;
+        submitAsyncTask(new SQLTask<T>(key, priority, coalesceKey, supplier,
+                                       completeVia(executor, future),
+                                       failVia(executor, future)));
+        return future;
+    }
+
+    private static <T> Consumer<T> completeVia(Executor executor, CompletableFuture<T> future) {
+        return result -> executor.execute(() -> future.complete(result));
+    }
+
+    private static Consumer<Throwable> failVia(Executor executor, CompletableFuture<?> future) {
+        return t -> executor.execute(() -> future.completeExceptionally(t));
+    }
+
+    private <T> Consumer<T> callbackVia(Consumer<T> callback) {
+        return callback != null
+            ? result -> dispatcher.execute(() -> callback.accept(result))
+            : null;
+    }
+
+    /**
+     * Schedule an async task and hand its result to a callback on the
+     * primary thread.  This is what all callback methods do.
+     * @param callback the callback, or null
+     */
+    protected <T> void supplyAsync(Object key, SQLPriority priority, Supplier<T> supplier, Consumer<T> callback) {
+        supplyAsync(key, priority, null, supplier, callback);
+    }
+
+    private <T> void supplyAsync(Object key, SQLPriority priority, Object coalesceKey, Supplier<T> supplier, Consumer<T> callback) {
+        submitAsyncTask(new SQLTask<T>(key, priority, coalesceKey, supplier, callbackVia(callback), this::reportAsyncError));
+    }
+
+    /**
+     * Set the executor which completes the futures of this database.
+     * The default completes them on the async thread which computed
+     * the result, so chained stages stay off the primary thread.
+     * getMainThreadExecutor() completes them on the primary thread.
+     */
+    public void setCompletionExecutor(Executor executor) {
+        this.completionExecutor = executor != null ? executor : Runnable::run;
+    }
+
+    /**
+     * An executor which runs tasks on the primary thread.  Tasks are
+     * queued and run once per tick, within the callbackBudget.
+     */
+    public Executor getMainThreadExecutor() {
+        return dispatcher;
+    }
+
+    private SQLExecutor createWorkerExecutor() {
+        final int workers = Math.max(1, getConfig().getAsyncWorkers());
+        final SQLExecutor executor = new SQLExecutor(getConfig(), this::runAsyncTasks, null, null);
+        asyncSemaphore = new Semaphore(workers);
+        asyncWorkers = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i += 1) {
+            asyncWorkers.add(Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> asyncWorkerTask(executor)));
+        }
+        return executor;
+    }
+
+    /**
+     * Run async tasks on virtual threads which are launched on
+     * demand.  The number of threads at once is limited by the
+     * connections the pool has left, which may be shared with other
+     * databases.  The connection of the primary thread is pinned and
+     * does not count.
+     */
+    private SQLExecutor createVirtualThreadExecutor() {
+        final ThreadFactory threadFactory = Thread.ofVirtual().name("SQL-" + plugin.getName() + "-", 0L).factory();
+        final SQLConnectionPool pool = getConnectionPool();
+        return new SQLExecutor(getConfig(), this::runAsyncTasks,
+                               Executors.newThreadPerTaskExecutor(threadFactory),
+                               pool::getAvailableCount);
+    }
+
+    /**
+     * Run one task, or a batch of compatible saves as one statement.
+     */
+    private void runAsyncTasks(List<SQLTask<?>> tasks) {
+        if (tasks.size() == 1) {
+            runAsyncTaskSafely(tasks.get(0));
+        } else {
+            runMergedSaves(tasks);
+        }
+    }
+
+    private void runAsyncTaskSafely(Runnable task) {
+        try {
+            runAsyncTask(task);
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (task instanceof SQLTask<?> sqlTask) {
+                // Fail the caller if the task never got to run
+                sqlTask.abandon(e);
+            }
+        }
+    }
+
+    private void asyncWorkerTask(SQLExecutor executor) {
         if (!asyncSemaphore.tryAcquire()) {
             // Should only happen with extremely poor timing
             plugin.getLogger().warning("Async worker task creation failed!");
             return;
         }
-        asyncThread = Thread.currentThread();
-        List<Runnable> tasks = new ArrayList<>();
-        while (!doStop && (plugin.isEnabled() || !asyncQueue.isEmpty())) {
+        while (!doStop && (plugin.isEnabled() || executor.size() > 0)) {
             try {
-                // Empty the queue
-                Runnable task = asyncQueue.poll(50, TimeUnit.MILLISECONDS);
-                if (task == null) continue;
-                tasks.clear();
-                tasks.add(task);
-                asyncQueue.drainTo(tasks);
-                int backlog = tasks.size();
-                if (backlog > getConfig().backlogThreshold) {
+                int backlog = executor.size();
+                if (backlog > getConfig().backlogThreshold
+                    && System.currentTimeMillis() - backlogWarningTime > BACKLOG_WARNING_INTERVAL) {
+                    backlogWarningTime = System.currentTimeMillis();
                     plugin.getLogger()
                         .warning("[SQL] Backlog exceeds threshold: "
                                  + backlog + " > " + getConfig().backlogThreshold);
                 }
-                for (Runnable run : tasks) {
-                    try {
-                        run.run();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
+                executor.runNext(50L);
             } catch (InterruptedException ie) {
                 ie.printStackTrace();
                 continue;
@@ -653,38 +1320,250 @@ public final class SQLDatabase {
     }
 
     public void waitForAsyncTask() {
-        if (asyncQueue == null) return;
-        int pending = asyncQueue.size();
-        if (pending == 0) return;
-        plugin.getLogger().info("[SQL] " + pending + " tasks pending");
-        asyncSemaphore.acquireUninterruptibly();
-        while (!asyncQueue.isEmpty()) {
-            List<Runnable> list = new ArrayList<>(asyncQueue.size());
-            asyncQueue.drainTo(list);
-            for (Runnable run : list) {
-                try {
-                    run.run();
-                } catch (Throwable t) {
-                    t.printStackTrace();
+        waitForAsyncExecutor();
+        // Deliver the callbacks which did not get a tick
+        if (Bukkit.isPrimaryThread()) dispatcher.flush();
+    }
+
+    /**
+     * Take every pending task out of the queue and run them right
+     * here, in parallel across pooled connections, one thread per
+     * ordering key at a time.  Runs of compatible row saves are
+     * merged into one statement.  Whatever has not started by the
+     * shutdown deadline is abandoned and listed in the log.
+     *
+     * The executor is paused meanwhile, and its running tasks finish
+     * before anything is drained, so no key ever runs on a worker and
+     * here at once.  Tasks submitted during the drain are drained in
+     * turn.  Afterwards, the executor resumes.
+     */
+    private void waitForAsyncExecutor() {
+        if (taskConnection.get() != null) {
+            throw new IllegalStateException("Cannot wait for the async queue from an async task");
+        }
+        final SQLExecutor executor = asyncExecutor;
+        if (executor == null && (writeBehind == null || writeBehind.size() == 0)) return;
+        final long timeout = getConfig().getAsyncShutdownTimeout();
+        final long deadline = timeout > 0L
+            ? System.currentTimeMillis() + timeout
+            : Long.MAX_VALUE;
+        final List<SQLTask<?>> abandoned = Collections.synchronizedList(new ArrayList<>());
+        if (executor != null) executor.pause();
+        try {
+            boolean quiet;
+            try {
+                // Running tasks finish first, so every key stays in order
+                quiet = executor == null || executor.awaitQuiet(deadline);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                quiet = false;
+            }
+            boolean first = true;
+            while (true) {
+                final List<SQLTask<?>> tasks = executor != null ? executor.drain() : new ArrayList<>();
+                // Buffered writes go last, after everything they may follow
+                if (first && writeBehind != null) writeBehind.drainTo(dirty -> tasks.add(dirtyRowTask(dirty)));
+                if (tasks.isEmpty()) break;
+                if (first) plugin.getLogger().info("[SQL] " + tasks.size() + " tasks pending");
+                first = false;
+                if (!quiet || !abandoned.isEmpty() || System.currentTimeMillis() > deadline) {
+                    abandonAll(tasks, abandoned);
+                } else {
+                    runDrained(tasks, deadline, abandoned);
+                }
+            }
+        } finally {
+            if (executor != null) executor.resume();
+        }
+        if (!abandoned.isEmpty()) {
+            plugin.getLogger().warning("[SQL] Shutdown deadline passed, " + abandoned.size() + " tasks abandoned:");
+            synchronized (abandoned) {
+                for (SQLTask<?> task : abandoned) {
+                    plugin.getLogger().warning("[SQL] - " + task);
                 }
             }
         }
     }
 
-    public void close() {
-        if (primaryConnection != null) {
+    /**
+     * Run drained tasks on a few threads, each taking all tasks of
+     * one key at a time.
+     */
+    private void runDrained(List<SQLTask<?>> tasks, long deadline, List<SQLTask<?>> abandoned) {
+        final Map<Object, List<SQLTask<?>>> groups = new LinkedHashMap<>();
+        for (SQLTask<?> task : tasks) {
+            groups.computeIfAbsent(task.key, k -> new ArrayList<>()).add(task);
+        }
+        final ConcurrentLinkedQueue<List<SQLTask<?>>> queue = new ConcurrentLinkedQueue<>(groups.values());
+        final int threadCount = Math.min(groups.size(), Math.max(1, getConnectionPool().getAvailableCount()));
+        final List<Thread> threads = new ArrayList<>(threadCount);
+        for (int i = 0; i < threadCount; i += 1) {
+            threads.add(Thread.ofPlatform().daemon().name("SQL-" + plugin.getName() + "-Drain-" + i).start(() -> {
+                        List<SQLTask<?>> group;
+                        while ((group = queue.poll()) != null) {
+                            drainGroup(group, deadline, abandoned);
+                        }
+                    }));
+        }
+        for (Thread thread : threads) {
             try {
-                primaryConnection.close();
-            } catch (SQLException pe) {
-                pe.printStackTrace();
+                thread.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
             }
         }
-        if (asyncConnection != null) {
-            try {
-                asyncConnection.close();
-            } catch (SQLException pe) {
-                pe.printStackTrace();
+    }
+
+    private static void abandonAll(List<SQLTask<?>> tasks, List<SQLTask<?>> abandoned) {
+        for (SQLTask<?> task : tasks) {
+            abandoned.add(task);
+            task.abandon(new RejectedExecutionException("Shutdown deadline passed"));
+        }
+    }
+
+    /**
+     * Run the drained tasks of one ordering key in order.
+     */
+    private void drainGroup(List<SQLTask<?>> group, long deadline, List<SQLTask<?>> abandoned) {
+        int index = 0;
+        while (index < group.size()) {
+            if (System.currentTimeMillis() > deadline) {
+                abandonAll(group.subList(index, group.size()), abandoned);
+                return;
+            }
+            final int end = findSaveRun(group, index);
+            if (end - index > 1) {
+                runMergedSaves(group.subList(index, end));
+            } else {
+                runAsyncTaskSafely(group.get(index));
+            }
+            index = end;
+        }
+    }
+
+    /**
+     * Find the end of the run of compatible row saves starting at
+     * the given index, up to the batch size.
+     * @return the end index, exclusive
+     */
+    private int findSaveRun(List<SQLTask<?>> tasks, int start) {
+        final int limit = Math.min(tasks.size(), start + Math.max(1, getConfig().getAsyncBatchSize()));
+        int end = start + 1;
+        while (end < limit && SQLTask.canJoin(tasks.subList(start, end), tasks.get(end))) {
+            end += 1;
+        }
+        return end;
+    }
+
+    /**
+     * Run a batch of compatible row saves together.  Rows which are
+     * new get one multi-row insert, where each row receives its own
+     * generated id, and the other rows get one multi-row statement
+     * of the shape of the batch.  If a statement fails, none of its
+     * rows were written, so its saves are retried one by one, and
+     * one bad row cannot fail the others.
+     */
+    @SuppressWarnings("unchecked")
+    private void runMergedSaves(List<SQLTask<?>> tasks) {
+        final SQLTask.Save save = tasks.get(0).getSave();
+        final SQLTable<SQLRow> table = (SQLTable<SQLRow>) save.table();
+        final SQLColumn idColumn = table.getIdColumn();
+        final List<SQLTask<?>> inserts = new ArrayList<>();
+        final List<SQLTask<?>> others = new ArrayList<>();
+        for (SQLTask<?> task : tasks) {
+            if (idColumn != null && idColumn.getValue(task.getRow()) == null) {
+                inserts.add(task);
+            } else {
+                others.add(task);
+            }
+        }
+        // See saveTask(): these rows cannot collide with any other
+        runMergedStatement(inserts, table, false, false, save.fields());
+        runMergedStatement(others, table, save.doIgnore(), save.doUpdate(), save.fields());
+    }
+
+    /**
+     * Save the rows of several tasks with one statement.  Each task
+     * receives the result of its own row if the total tells, that is
+     * if all rows had the same outcome, and SUCCESS_NO_INFO
+     * otherwise, like a JDBC batch.
+     */
+    @SuppressWarnings("unchecked")
+    private void runMergedStatement(List<SQLTask<?>> tasks, SQLTable<SQLRow> table,
+                                    boolean doIgnore, boolean doUpdate, Set<String> fields) {
+        if (tasks.isEmpty()) return;
+        final SQLColumn idColumn = table.getIdColumn();
+        final List<SQLRow> rows = new ArrayList<>(tasks.size());
+        final List<SQLRow> newRows = new ArrayList<>();
+        for (SQLTask<?> task : tasks) {
+            rows.add(task.getRow());
+            if (idColumn != null && idColumn.getValue(task.getRow()) == null) newRows.add(task.getRow());
+        }
+        final int[] total = new int[1];
+        try {
+            runAsyncTask(() -> total[0] = withConnection(connection -> table.save(connection, rows.iterator(), doIgnore, doUpdate,
+                                                                                      fields, true)));
+        } catch (Exception e) {
+            plugin.getLogger().warning("[SQL] Merged save of " + rows.size() + " rows failed, retrying one by one: " + e.getMessage());
+            // Ids of rolled back rows would be taken for existing ones
+            for (SQLRow row : newRows) {
+                idColumn.setValue(row, null);
+            }
+            for (SQLTask<?> task : tasks) {
+                runAsyncTaskSafely(task);
+            }
+            return;
+        }
+        // Each row counts 0 if ignored, 1 if inserted or unchanged,
+        // and 2 if updated.
+        final int low = doIgnore ? 0 : 1;
+        final int high = doUpdate ? 2 : 1;
+        final int each = total[0] == low * rows.size() ? low
+            : total[0] == high * rows.size() ? high
+            : Statement.SUCCESS_NO_INFO;
+        for (SQLTask<?> task : tasks) {
+            ((SQLTask<Integer>) task).complete(each);
+        }
+    }
+
+    public void close() {
+        if (Bukkit.isPrimaryThread()) dispatcher.flush();
+        synchronized (this) {
+            if (writeBehind != null) {
+                int count = writeBehind.size();
+                if (count > 0) {
+                    plugin.getLogger().warning("[SQL] Closing with " + count + " dirty rows unwritten."
+                                               + " Call waitForAsyncTask() first.");
+                }
+                writeBehind.close();
+                writeBehind = null;
+            }
+        }
+        synchronized (this) {
+            if (connectionPool != null) {
+                connectionPool.release(asyncConnection);
+                SQLPlugin sqlPlugin = getSQLPlugin();
+                // The pools of an async() copy belong to its origin
+                if (origin == null && connectionPoolShared && sqlPlugin != null) {
+                    sqlPlugin.releasePool(connectionPool, getConfig());
+                } else if (origin == null) {
+                    connectionPool.close();
+                }
+                connectionPool = null;
+            }
+            asyncConnection = null;
+            if (replicaPools != null && origin == null) {
+                SQLPlugin sqlPlugin = getSQLPlugin();
+                for (SQLConnectionPool pool : replicaPools) {
+                    if (sqlPlugin != null) {
+                        sqlPlugin.releasePool(pool, getConfig());
+                    } else {
+                        pool.close();
+                    }
+                }
             }
+            replicaPools = null;
         }
         SQLPlugin sqlPlugin = getSQLPlugin();
         if (sqlPlugin != null) {
@@ -693,8 +1572,35 @@ public final class SQLDatabase {
     }
 
     public int getBacklogSize() {
-        if (asyncQueue == null) return 0;
-        return asyncQueue.size();
+        if (asyncExecutor == null) return 0;
+        return asyncExecutor.size();
+    }
+
+    /**
+     * The number of async tasks which were rejected because the queue
+     * was full.
+     */
+    public long getRejectedCount() {
+        if (asyncExecutor == null) return 0L;
+        return asyncExecutor.getRejectedCount();
+    }
+
+    /**
+     * The number of pending background tasks which were dropped to
+     * make room, see SQLOverflowPolicy.DROP_OLDEST.
+     */
+    public long getDroppedCount() {
+        if (asyncExecutor == null) return 0L;
+        return asyncExecutor.getDroppedCount();
+    }
+
+    /**
+     * The number of async tasks which were folded into an identical
+     * pending task, see SQLOverflowPolicy.COALESCE.
+     */
+    public long getCoalescedCount() {
+        if (asyncExecutor == null) return 0L;
+        return asyncExecutor.getCoalescedCount();
     }
 
     public <E extends SQLRow> SQLUpdater<E> update(Class<E> clazz) {
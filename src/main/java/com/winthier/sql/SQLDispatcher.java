@@ -0,0 +1,84 @@
+package com.winthier.sql;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.java.JavaPlugin;
+
+/**
+ * Delivers the results of async tasks to the primary thread.
+ *
+ * Instead of one scheduler task per result, completed callbacks are
+ * queued and drained by a single scheduler task per tick.  Each
+ * drain stops once the configured budget is spent, and whatever is
+ * left carries over into the next tick.
+ */
+final class SQLDispatcher implements Executor {
+    private final SQLDatabase database;
+    private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    /** True while a drain is scheduled or running. */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    SQLDispatcher(final SQLDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        queue.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (queue.isEmpty() || !scheduled.compareAndSet(false, true)) return;
+        final JavaPlugin plugin = database.getPlugin();
+        if (!plugin.isEnabled()) {
+            // The scheduler refuses disabled plugins.  Whatever is
+            // queued now is delivered by flush().
+            scheduled.set(false);
+            return;
+        }
+        Bukkit.getScheduler().runTask(plugin, this::tick);
+    }
+
+    private void tick() {
+        final long budget = TimeUnit.MILLISECONDS.toNanos(database.getConfig().getCallbackBudget());
+        final long start = System.nanoTime();
+        try {
+            do {
+                Runnable task = queue.poll();
+                if (task == null) break;
+                run(task);
+            } while (System.nanoTime() - start < budget);
+        } finally {
+            scheduled.set(false);
+            schedule();
+        }
+    }
+
+    /**
+     * Run every queued callback on the calling thread, regardless of
+     * the budget.  Only call this on the primary thread.
+     */
+    public void flush() {
+        Runnable task;
+        while ((task = queue.poll()) != null) {
+            run(task);
+        }
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable t) {
+            database.getPlugin().getLogger().log(Level.SEVERE, "[SQL] Async callback failed", t);
+        }
+    }
+}
@@ -0,0 +1,528 @@
+package com.winthier.sql;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ * The queue of async tasks of one database, drained by any number of
+ * worker threads.
+ *
+ * Every task carries an ordering key, usually a table name or a
+ * table name plus row id.  Tasks with the same key run one at a
+ * time, in the order they were submitted.  Tasks with different keys
+ * may run in parallel.
+ *
+ * A key is ready when it has pending tasks and none running.  Ready
+ * keys wait in one lane per priority.  A key with any interactive
+ * task pending waits in the interactive lane, even behind background
+ * tasks of its own, so that they do not hold up the interactive
+ * task.  Within a lane, the key whose next task was
+ * submitted first goes first, so with a single worker, tasks of one
+ * priority run in the order they were submitted, whatever their
+ * keys.  Interactive keys go first, but after
+ * INTERACTIVE_BURST interactive tasks in a row, one background task
+ * gets its turn so bulk work cannot starve.
+ *
+ * The number of pending tasks is bounded.  Once full, new tasks are
+ * treated according to the overflow policy.  Rejected and dropped
+ * tasks are abandoned, which fails their futures.
+ *
+ * A task which saves a single row takes compatible saves queued
+ * right behind it along, up to the batch size, so the runner can
+ * write them with one statement.  With a batch window, it waits that
+ * long for more of them to arrive.
+ *
+ * Without a launcher, worker threads call runNext() in a loop.  With
+ * a launcher, usually creating virtual threads, threads are launched
+ * on demand and exit as soon as no key is ready.  No thread is
+ * waiting while the queue is empty.  A thread is only launched if a
+ * connection is free for it, beyond those which launched threads
+ * are about to take.  One thread may always run.
+ *
+ * A paused executor accepts tasks but hands none out, so that the
+ * queue can be drained elsewhere without racing the workers.
+ */
+final class SQLExecutor {
+    /** The key of tasks which were submitted without one. */
+    private static final Object DEFAULT_KEY = new Object();
+    /** Interactive tasks in a row before a waiting background task runs. */
+    static final int INTERACTIVE_BURST = 8;
+    private final int capacity;
+    private final SQLOverflowPolicy policy;
+    private final int batchSize;
+    private final long batchWindow;
+    private final Consumer<List<SQLTask<?>>> runner;
+    private final Executor launcher;
+    private final IntSupplier launchCapacity;
+    /** Pending tasks of each key.  A key stays mapped while its task runs. */
+    private final Map<Object, KeyQueue> queues = new HashMap<>();
+    /** Ready keys by their lane and the sequence number of their next task. */
+    private final TreeMap<Long, Object> interactiveKeys = new TreeMap<>();
+    private final TreeMap<Long, Object> backgroundKeys = new TreeMap<>();
+    /** Pending entries by coalesce key, the latest one each. */
+    private final Map<Object, Entry> coalescable = new HashMap<>();
+    private int interactiveStreak;
+    private int size;
+    private int running;
+    private int launched;
+    private boolean paused;
+    private long sequence;
+    private long rejectedCount;
+    private long droppedCount;
+    private long coalescedCount;
+
+    private record Entry(long sequence, SQLTask<?> task) { }
+
+    private record Next(Object key, List<SQLTask<?>> tasks) { }
+
+    /**
+     * The pending tasks of one key, which also counts the
+     * interactive ones among them.
+     */
+    private static final class KeyQueue implements Iterable<Entry> {
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        private int interactiveCount;
+
+        void add(Entry entry) {
+            entries.add(entry);
+            if (entry.task().priority != SQLPriority.BACKGROUND) interactiveCount += 1;
+        }
+
+        Entry poll() {
+            Entry entry = entries.poll();
+            if (entry != null && entry.task().priority != SQLPriority.BACKGROUND) interactiveCount -= 1;
+            return entry;
+        }
+
+        void remove(Entry entry) {
+            if (entries.remove(entry) && entry.task().priority != SQLPriority.BACKGROUND) interactiveCount -= 1;
+        }
+
+        Entry peek() {
+            return entries.peek();
+        }
+
+        Entry peekLast() {
+            return entries.peekLast();
+        }
+
+        boolean isEmpty() {
+            return entries.isEmpty();
+        }
+
+        boolean isInteractive() {
+            return interactiveCount > 0;
+        }
+
+        void clear() {
+            entries.clear();
+            interactiveCount = 0;
+        }
+
+        @Override
+        public Iterator<Entry> iterator() {
+            return entries.iterator();
+        }
+    }
+
+    /**
+     * @param config provides the queue depth, overflow policy, batch
+     * size and batch window
+     * @param runner runs one task, or a batch of compatible saves, on
+     * the calling thread
+     * @param launcher launches runner threads, or null if worker
+     * threads call runNext()
+     * @param launchCapacity supplies the number of connections free
+     * right now, or null without a launcher
+     */
+    SQLExecutor(final Config config, final Consumer<List<SQLTask<?>>> runner,
+                final Executor launcher, final IntSupplier launchCapacity) {
+        this.capacity = config.getAsyncQueueDepth() > 0 ? config.getAsyncQueueDepth() : Integer.MAX_VALUE;
+        this.policy = config.getAsyncOverflowPolicy() != null ? config.getAsyncOverflowPolicy() : SQLOverflowPolicy.BLOCK;
+        this.batchSize = Math.max(1, config.getAsyncBatchSize());
+        this.batchWindow = config.getAsyncBatchWindow();
+        this.runner = runner;
+        this.launcher = launcher;
+        this.launchCapacity = launchCapacity;
+    }
+
+    /**
+     * Submit a task.  If the queue is full, the overflow policy
+     * decides.  Abandoned tasks are told so before this returns.
+     * @param mayBlock true if the caller may wait for room
+     * @return true if the task was queued or coalesced, false if it
+     * was rejected.
+     */
+    public boolean submit(SQLTask<?> task, boolean mayBlock) throws InterruptedException {
+        SQLTask<?> dropped = null;
+        synchronized (this) {
+            if (size >= capacity) {
+                switch (policy) {
+                case BLOCK:
+                    while (mayBlock && size >= capacity) {
+                        wait();
+                    }
+                    break;
+                case DROP_OLDEST:
+                    dropped = dropOldestBackground();
+                    break;
+                case COALESCE:
+                    if (coalesce(task)) {
+                        coalescedCount += 1;
+                        return true;
+                    }
+                    break;
+                case REJECT:
+                default:
+                    break;
+                }
+            }
+            if (size >= capacity) {
+                rejectedCount += 1;
+            } else {
+                enqueue(task);
+                task = null;
+            }
+        }
+        if (dropped != null) {
+            dropped.abandon(new RejectedExecutionException("Async queue full, task dropped"));
+        }
+        if (task != null) {
+            task.abandon(new RejectedExecutionException("Async queue full, task rejected"));
+            return false;
+        }
+        return true;
+    }
+
+    private static Object keyOf(SQLTask<?> task) {
+        return task.key != null ? task.key : DEFAULT_KEY;
+    }
+
+    private void enqueue(SQLTask<?> task) {
+        final Object key = keyOf(task);
+        KeyQueue queue = queues.get(key);
+        final Entry entry = new Entry(sequence++, task);
+        if (queue == null) {
+            queue = new KeyQueue();
+            queues.put(key, queue);
+            queue.add(entry);
+            markReady(key, queue);
+        } else {
+            final Entry head = queue.peek();
+            queue.add(entry);
+            // A waiting key moves up to the lane of its new task
+            if (head != null && task.priority != SQLPriority.BACKGROUND
+                && backgroundKeys.remove(head.sequence(), key)) {
+                interactiveKeys.put(head.sequence(), key);
+            }
+        }
+        if (task.coalesceKey != null) coalescable.put(task.coalesceKey, entry);
+        size += 1;
+        notifyAll();
+        launchIfNeeded();
+    }
+
+    /**
+     * Fold a task into the pending one with the same coalesce key.
+     * This is only safe if nothing else of the same ordering key was
+     * queued in between.
+     */
+    private boolean coalesce(SQLTask<?> task) {
+        if (task.coalesceKey == null) return false;
+        Entry entry = coalescable.get(task.coalesceKey);
+        if (entry == null) return false;
+        KeyQueue queue = queues.get(keyOf(task));
+        if (queue == null || queue.peekLast() != entry) return false;
+        entry.task().absorb(task);
+        return true;
+    }
+
+    /**
+     * Remove the oldest pending background task.
+     * @return the removed task, or null if there was none
+     */
+    private SQLTask<?> dropOldestBackground() {
+        Object victimKey = null;
+        Entry victim = null;
+        for (Map.Entry<Object, KeyQueue> it : queues.entrySet()) {
+            for (Entry entry : it.getValue()) {
+                if (entry.task().priority != SQLPriority.BACKGROUND) continue;
+                if (victim == null || entry.sequence() < victim.sequence()) {
+                    victimKey = it.getKey();
+                    victim = entry;
+                }
+                break; // Later entries of this key are younger
+            }
+        }
+        if (victim == null) return null;
+        KeyQueue queue = queues.get(victimKey);
+        final boolean wasHead = queue.peek() == victim;
+        queue.remove(victim);
+        forget(victim);
+        size -= 1;
+        droppedCount += 1;
+        // A ready key moves to the lane of its new head, if any
+        if (wasHead && (interactiveKeys.remove(victim.sequence(), victimKey)
+                        || backgroundKeys.remove(victim.sequence(), victimKey))) {
+            if (queue.isEmpty()) {
+                queues.remove(victimKey);
+            } else {
+                markReady(victimKey, queue);
+            }
+        }
+        notifyAll();
+        return victim.task();
+    }
+
+    private void forget(Entry entry) {
+        if (entry.task().coalesceKey != null) {
+            coalescable.remove(entry.task().coalesceKey, entry);
+        }
+    }
+
+    /**
+     * Put a key with pending tasks in its lane.
+     */
+    private void markReady(Object key, KeyQueue queue) {
+        final long head = queue.peek().sequence();
+        if (queue.isInteractive()) {
+            interactiveKeys.put(head, key);
+        } else {
+            backgroundKeys.put(head, key);
+        }
+    }
+
+    private boolean hasReady() {
+        return !paused && (!interactiveKeys.isEmpty() || !backgroundKeys.isEmpty());
+    }
+
+    /**
+     * Take the next task of the next ready key, with the saves it
+     * can take along.  The caller must run them and then call
+     * finish().
+     */
+    private Next takeNext() {
+        final Object key;
+        if (!interactiveKeys.isEmpty()
+            && (backgroundKeys.isEmpty() || interactiveStreak < INTERACTIVE_BURST)) {
+            key = interactiveKeys.pollFirstEntry().getValue();
+            interactiveStreak += 1;
+        } else if (!backgroundKeys.isEmpty()) {
+            key = backgroundKeys.pollFirstEntry().getValue();
+            interactiveStreak = 0;
+        } else {
+            return null;
+        }
+        Entry entry = queues.get(key).poll();
+        forget(entry);
+        size -= 1;
+        running += 1;
+        final List<SQLTask<?>> tasks = new ArrayList<>();
+        tasks.add(entry.task());
+        final Next next = new Next(key, tasks);
+        takeBatch(next);
+        notifyAll();
+        return next;
+    }
+
+    /**
+     * Move compatible saves from the head of the queue of the key
+     * into the batch.
+     */
+    private void takeBatch(Next next) {
+        KeyQueue queue = queues.get(next.key());
+        if (queue == null) return;
+        while (next.tasks().size() < batchSize) {
+            Entry entry = queue.peek();
+            if (entry == null || !SQLTask.canJoin(next.tasks(), entry.task())) return;
+            queue.poll();
+            forget(entry);
+            size -= 1;
+            next.tasks().add(entry.task());
+        }
+    }
+
+    /**
+     * Give more compatible saves the batch window to arrive.  The key
+     * is running meanwhile, so nobody else takes its tasks.
+     */
+    private void awaitBatch(Next next) {
+        if (batchWindow <= 0L || next.tasks().get(0).getSave() == null) return;
+        final long deadline = System.currentTimeMillis() + batchWindow;
+        synchronized (this) {
+            while (next.tasks().size() < batchSize) {
+                takeBatch(next);
+                notifyAll();
+                KeyQueue queue = queues.get(next.key());
+                // Stop at the first task which cannot join
+                if (queue == null || !queue.isEmpty()) return;
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0L) return;
+                try {
+                    wait(remaining);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private synchronized void finish(Object key) {
+        running -= 1;
+        KeyQueue queue = queues.get(key);
+        if (queue.isEmpty()) {
+            queues.remove(key);
+        } else {
+            markReady(key, queue);
+            launchIfNeeded();
+        }
+        notifyAll();
+    }
+
+    private void launchIfNeeded() {
+        if (launcher == null || !hasReady()) return;
+        // Launched threads which are not running yet will each want a connection
+        if (launched > 0 && launched - running >= launchCapacity.getAsInt()) return;
+        launched += 1;
+        launcher.execute(this::runLaunched);
+    }
+
+    /**
+     * The body of a launched thread.  Only used with a launcher.
+     */
+    private void runLaunched() {
+        while (true) {
+            final Next next;
+            synchronized (this) {
+                next = takeNext();
+                if (next == null) {
+                    launched -= 1;
+                    return;
+                }
+            }
+            try {
+                awaitBatch(next);
+                runner.accept(next.tasks());
+            } finally {
+                finish(next.key());
+            }
+        }
+    }
+
+    /**
+     * Wait for a task to become ready and run it with the given
+     * runner on the calling thread.
+     * @return true if a task was run, false if none became ready
+     * within the timeout.
+     */
+    public boolean runNext(long timeoutMillis) throws InterruptedException {
+        final Next next;
+        synchronized (this) {
+            if (!hasReady()) {
+                wait(timeoutMillis);
+                if (!hasReady()) return false;
+            }
+            next = takeNext();
+        }
+        try {
+            awaitBatch(next);
+            runner.accept(next.tasks());
+        } finally {
+            finish(next.key());
+        }
+        return true;
+    }
+
+    /**
+     * Stop handing out tasks.  Tasks which are already running are
+     * unaffected, see awaitQuiet().
+     */
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    /**
+     * Hand out tasks again, and launch threads for them if needed.
+     */
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+        for (int i = interactiveKeys.size() + backgroundKeys.size(); i > 0; i -= 1) {
+            launchIfNeeded();
+        }
+    }
+
+    /**
+     * Wait until no task is running, or until the deadline.  Pending
+     * tasks are not waited for, so this suits a paused executor.
+     * @param deadline the deadline in epoch milliseconds
+     * @return true if quiet, false if the deadline passed
+     */
+    public synchronized boolean awaitQuiet(long deadline) throws InterruptedException {
+        while (running > 0) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0L) return false;
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Remove all pending tasks in the order they were submitted.
+     * Tasks which are currently running are unaffected.
+     */
+    public synchronized List<SQLTask<?>> drain() {
+        List<Entry> entries = new ArrayList<>(size);
+        for (KeyQueue queue : queues.values()) {
+            for (Entry entry : queue) {
+                entries.add(entry);
+            }
+            queue.clear();
+        }
+        // Keys with a running task stay mapped until it finishes.
+        for (Object key : interactiveKeys.values()) {
+            queues.remove(key);
+        }
+        for (Object key : backgroundKeys.values()) {
+            queues.remove(key);
+        }
+        interactiveKeys.clear();
+        backgroundKeys.clear();
+        coalescable.clear();
+        size = 0;
+        notifyAll();
+        entries.sort(Comparator.comparingLong(Entry::sequence));
+        List<SQLTask<?>> result = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            result.add(entry.task());
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+}
@@ -0,0 +1,138 @@
+package com.winthier.sql;
+
+import java.util.Arrays;
+
+/**
+ * A map from int to long without boxing, for id to value lookups of
+ * many rows, see SQLTable.Finder#findIntToLongMap().  It uses open
+ * addressing with linear probing.  It holds at most MAX_SIZE entries.
+ */
+public final class SQLIntLongMap {
+    private static final float LOAD_FACTOR = 0.5f;
+    private static final int MAX_CAPACITY = 1 << 30;
+    public static final int MAX_SIZE = (int) (MAX_CAPACITY * LOAD_FACTOR);
+    private int[] keys;
+    private long[] values;
+    private boolean[] used;
+    private int size;
+
+    public SQLIntLongMap() {
+        this(16);
+    }
+
+    public SQLIntLongMap(final int expectedSize) {
+        if (expectedSize < 0 || expectedSize > MAX_SIZE) {
+            throw new IllegalArgumentException("Expected size out of range: " + expectedSize);
+        }
+        int needed = (int) Math.max(8L, (long) Math.ceil(expectedSize / LOAD_FACTOR));
+        int capacity = Integer.highestOneBit(needed - 1) << 1;
+        keys = new int[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int indexOf(int key) {
+        final int mask = keys.length - 1;
+        int hash = key * 0x9E3779B9;
+        int index = (hash ^ (hash >>> 16)) & mask;
+        while (used[index] && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    public boolean containsKey(int key) {
+        return used[indexOf(key)];
+    }
+
+    public long get(int key, long defaultValue) {
+        int index = indexOf(key);
+        return used[index] ? values[index] : defaultValue;
+    }
+
+    public long get(int key) {
+        return get(key, 0L);
+    }
+
+    /**
+     * Map a key to a value, replacing any previous value.
+     * @throws IllegalStateException if the map is full
+     */
+    public void put(int key, long value) {
+        int index = indexOf(key);
+        if (used[index]) {
+            values[index] = value;
+            return;
+        }
+        if (size + 1 > keys.length * LOAD_FACTOR) {
+            grow();
+            index = indexOf(key);
+        }
+        keys[index] = key;
+        values[index] = value;
+        used[index] = true;
+        size += 1;
+    }
+
+    private void grow() {
+        if (keys.length >= MAX_CAPACITY) {
+            throw new IllegalStateException("SQLIntLongMap cannot hold more than " + MAX_SIZE + " entries");
+        }
+        final int[] oldKeys = keys;
+        final long[] oldValues = values;
+        final boolean[] oldUsed = used;
+        keys = new int[oldKeys.length << 1];
+        values = new long[oldKeys.length << 1];
+        used = new boolean[oldKeys.length << 1];
+        for (int i = 0; i < oldKeys.length; i += 1) {
+            if (!oldUsed[i]) continue;
+            int index = indexOf(oldKeys[i]);
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+            used[index] = true;
+        }
+    }
+
+    public int[] keys() {
+        int[] result = new int[size];
+        int count = 0;
+        for (int i = 0; i < keys.length; i += 1) {
+            if (used[i]) result[count++] = keys[i];
+        }
+        return result;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i += 1) {
+            if (used[i]) consumer.accept(keys[i], values[i]);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(int key, long value);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((key, value) -> {
+                if (sb.length() > 1) sb.append(", ");
+                sb.append(key).append("=").append(value);
+            });
+        return sb.append("}").toString();
+    }
+}
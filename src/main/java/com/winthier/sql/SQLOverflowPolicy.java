@@ -0,0 +1,28 @@
+package com.winthier.sql;
+
+/**
+ * What happens to a new async task when the queue of a database is
+ * full, see Config.asyncQueueDepth.
+ */
+public enum SQLOverflowPolicy {
+    /**
+     * Wait for room.  The primary thread never waits and is rejected
+     * instead.
+     */
+    BLOCK,
+    /**
+     * Fail the new task right away.
+     */
+    REJECT,
+    /**
+     * Drop the oldest pending background task to make room.  If
+     * there is none, the new task is rejected.
+     */
+    DROP_OLDEST,
+    /**
+     * Fold the new task into an identical pending one, such as a
+     * save of the same row object.  Tasks which cannot be folded are
+     * rejected.
+     */
+    COALESCE;
+}
@@ -0,0 +1,47 @@
+package com.winthier.sql;
+
+import java.util.List;
+import lombok.Getter;
+
+/**
+ * One page of a keyset paginated query, see
+ * SQLTable.Finder#findPage(int).  The cursor leads to the next page
+ * via SQLTable.Finder#after(SQLPage.Cursor).
+ */
+@Getter
+public final class SQLPage<E extends SQLRow> {
+    private final List<E> rows;
+    /** The cursor of the next page, or null if this is the last. */
+    private final Cursor cursor;
+
+    SQLPage(final List<E> rows, final Cursor cursor) {
+        this.rows = rows;
+        this.cursor = cursor;
+    }
+
+    public boolean hasNext() {
+        return cursor != null;
+    }
+
+    /**
+     * The position after the last row of a page: the values of the
+     * order columns followed by the id.  It is only meaningful to a
+     * finder with the same order.
+     */
+    public static final class Cursor {
+        private final List<Object> values;
+
+        Cursor(final List<Object> values) {
+            this.values = List.copyOf(values);
+        }
+
+        List<Object> getValues() {
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return "Cursor" + values;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.winthier.sql;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+/**
+ * A placeholder for a value in a compiled finder query, see
+ * SQLTable.Finder#compile().  A parameter is either named and bound
+ * from a map, or positional and bound from an argument list.
+ */
+@Value @AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class SQLParameter {
+    /** The name, or null if positional. */
+    private final String name;
+    /** The index, or -1 if named. */
+    private final int index;
+
+    public static SQLParameter named(String name) {
+        if (name == null || name.isEmpty()) throw new IllegalArgumentException("Name cannot be empty");
+        return new SQLParameter(name, -1);
+    }
+
+    public static SQLParameter at(int index) {
+        if (index < 0) throw new IllegalArgumentException("index=" + index);
+        return new SQLParameter(null, index);
+    }
+
+    public boolean isNamed() {
+        return name != null;
+    }
+
+    @Override
+    public String toString() {
+        return name != null ? ":" + name : "?" + index;
+    }
+}
@@ -1,6 +1,10 @@
 package com.winthier.sql;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.bukkit.Bukkit;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
@@ -10,6 +14,22 @@ import org.bukkit.plugin.java.JavaPlugin;
 public final class SQLPlugin extends JavaPlugin implements Listener {
     protected final ArrayList<SQLDatabase> databases = new ArrayList<>();
     protected final SQLCommand sqlCommand = new SQLCommand(this);
+    /** Connection pools by url, user and password, see acquirePool(). */
+    private final Map<String, SharedPool> pools = new HashMap<>();
+
+    private static final class SharedPool {
+        private final SQLConnectionPool pool;
+        /** The poolMaxSize of every user. */
+        private final List<Integer> sizes = new ArrayList<>();
+
+        SharedPool(final SQLConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        void updateSize() {
+            if (!sizes.isEmpty()) pool.setMaxSize(Collections.max(sizes));
+        }
+    }
 
     @Override
     public void onEnable() {
@@ -20,6 +40,7 @@ public final class SQLPlugin extends JavaPlugin implements Listener {
     @Override
     public void onDisable() {
         databases.clear();
+        closePools();
     }
 
     protected void register(SQLDatabase database) {
@@ -30,6 +51,70 @@ public final class SQLPlugin extends JavaPlugin implements Listener {
         databases.remove(database);
     }
 
+    /**
+     * Get the connection pool for the url and credentials of a
+     * database config, creating it if necessary.  All databases on
+     * the same server and schema share one pool.  Its size is the
+     * largest poolMaxSize of its users, so the server never holds
+     * more connections than that.  The first database to acquire a
+     * pool decides its timeouts.  Every call must be matched by a
+     * call to releasePool() with the same config.
+     */
+    protected SQLConnectionPool acquirePool(Config config) {
+        return acquirePool(config, config.getUrl());
+    }
+
+    /**
+     * Get the connection pool for the given url, such as that of a
+     * replica, and the credentials of a database config.
+     */
+    protected synchronized SQLConnectionPool acquirePool(Config config, String url) {
+        final String key = url + " " + config.getUser() + " " + config.getPassword();
+        SharedPool shared = pools.get(key);
+        if (shared == null) {
+            String name = url.equals(config.getUrl())
+                ? config.getDatabase()
+                : config.getDatabase() + "@" + url.substring(url.indexOf("//") + 2, url.lastIndexOf('/'));
+            shared = new SharedPool(new SQLConnectionPool(name, getLogger(), config, url));
+            pools.put(key, shared);
+        } else if (!shared.pool.hasSettingsOf(config)) {
+            getLogger().warning("[SQL] " + config.getDatabase() + ": Pool settings differ from those of the shared pool "
+                                + shared.pool + ", which are kept");
+        }
+        shared.sizes.add(config.getPoolMaxSize());
+        shared.updateSize();
+        return shared.pool;
+    }
+
+    /**
+     * Give up one use of a pool.  It shrinks to the largest
+     * poolMaxSize of its remaining users, and is closed once nobody
+     * uses it anymore.
+     * @param config the config the pool was acquired with
+     */
+    protected synchronized void releasePool(SQLConnectionPool pool, Config config) {
+        for (var it = pools.values().iterator(); it.hasNext();) {
+            SharedPool shared = it.next();
+            if (shared.pool != pool) continue;
+            shared.sizes.remove((Integer) config.getPoolMaxSize());
+            if (shared.sizes.isEmpty()) {
+                it.remove();
+                pool.close();
+            } else {
+                shared.updateSize();
+            }
+            return;
+        }
+        pool.close();
+    }
+
+    private synchronized void closePools() {
+        for (SharedPool shared : pools.values()) {
+            shared.pool.close();
+        }
+        pools.clear();
+    }
+
     @EventHandler
     private void onPluginDisable(PluginDisableEvent event) {
         databases.removeIf(d -> d.getPlugin() == event.getPlugin());
@@ -0,0 +1,12 @@
+package com.winthier.sql;
+
+/**
+ * The priority class of an async task.  Interactive tasks, such as
+ * lookups for a player who is waiting, run ahead of background
+ * tasks, such as bulk saves or log flushes.  Background tasks are
+ * never starved completely.
+ */
+public enum SQLPriority {
+    INTERACTIVE,
+    BACKGROUND;
+}
@@ -0,0 +1,179 @@
+package com.winthier.sql;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * Publishes the rows of a finder page by page, see
+ * SQLTable.Finder#publish(int).
+ *
+ * Nothing is fetched before a subscriber asks for rows.  Each fetch
+ * is one keyset page of at most batchSize rows, read by an async
+ * worker, so at most one page is held in memory per subscription.
+ * All signals reach the subscriber via the executor, one at a time.
+ * Every subscription runs the query anew.
+ */
+final class SQLPublisher<E extends SQLRow> implements Flow.Publisher<E> {
+    private final Fetcher<E> fetcher;
+    private final int batchSize;
+    /** The total number of rows, or -1 for no limit. */
+    private final long limit;
+    private final Executor executor;
+
+    /**
+     * Fetch the page after the cursor asynchronously.
+     */
+    interface Fetcher<E extends SQLRow> {
+        CompletableFuture<SQLPage<E>> fetch(SQLPage.Cursor cursor, int size);
+    }
+
+    SQLPublisher(final Fetcher<E> fetcher, final int batchSize, final long limit, final Executor executor) {
+        this.fetcher = fetcher;
+        this.batchSize = batchSize;
+        this.limit = limit;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super E> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        final Subscription subscription = new Subscription(subscriber);
+        executor.execute(() -> subscriber.onSubscribe(subscription));
+    }
+
+    private final class Subscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super E> subscriber;
+        private final ArrayDeque<E> buffer = new ArrayDeque<>();
+        private long demand;
+        private long remaining = limit >= 0 ? limit : Long.MAX_VALUE;
+        private SQLPage.Cursor cursor;
+        private boolean fetching;
+        /** True once the last page was fetched. */
+        private boolean exhausted;
+        private Throwable error;
+        /** True once cancelled, completed or failed. */
+        private boolean done;
+        /** True while a drain is scheduled or running. */
+        private boolean draining;
+
+        Subscription(final Flow.Subscriber<? super E> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (done) return;
+                if (n <= 0) {
+                    error = new IllegalArgumentException("Non-positive request: " + n);
+                    buffer.clear();
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public synchronized void cancel() {
+            done = true;
+            buffer.clear();
+        }
+
+        private void schedule() {
+            synchronized (this) {
+                if (draining) return;
+                draining = true;
+            }
+            executor.execute(this::drain);
+        }
+
+        /**
+         * Deliver buffered rows up to the demand, then either finish
+         * or fetch the next page.  Every state change is checked
+         * before the drain gives up, so no signal is lost.
+         */
+        private void drain() {
+            while (true) {
+                E row = null;
+                Throwable failure = null;
+                boolean complete = false;
+                boolean fetch = false;
+                synchronized (this) {
+                    if (done) {
+                        draining = false;
+                        return;
+                    } else if (error != null) {
+                        failure = error;
+                        done = true;
+                    } else if (demand > 0 && !buffer.isEmpty()) {
+                        row = buffer.poll();
+                        if (demand != Long.MAX_VALUE) demand -= 1;
+                    } else if (buffer.isEmpty() && exhausted) {
+                        complete = true;
+                        done = true;
+                    } else {
+                        if (demand > 0 && buffer.isEmpty() && !fetching) {
+                            fetching = true;
+                            fetch = true;
+                        }
+                        draining = false;
+                    }
+                }
+                if (row != null) {
+                    try {
+                        subscriber.onNext(row);
+                    } catch (RuntimeException re) {
+                        cancel();
+                        throw re;
+                    }
+                } else if (failure != null) {
+                    subscriber.onError(failure);
+                    return;
+                } else if (complete) {
+                    subscriber.onComplete();
+                    return;
+                } else {
+                    if (fetch) fetch();
+                    return;
+                }
+            }
+        }
+
+        private void fetch() {
+            final SQLPage.Cursor after;
+            final int size;
+            synchronized (this) {
+                after = cursor;
+                size = (int) Math.min(batchSize, remaining);
+            }
+            final CompletableFuture<SQLPage<E>> future;
+            try {
+                future = fetcher.fetch(after, size);
+            } catch (RuntimeException re) {
+                fetched(null, re);
+                return;
+            }
+            future.whenComplete(this::fetched);
+        }
+
+        private void fetched(SQLPage<E> page, Throwable t) {
+            synchronized (this) {
+                fetching = false;
+                if (done) return;
+                if (t != null) {
+                    error = t;
+                } else {
+                    buffer.addAll(page.getRows());
+                    remaining -= page.getRows().size();
+                    cursor = page.getCursor();
+                    exhausted = cursor == null || remaining <= 0;
+                }
+            }
+            schedule();
+        }
+    }
+}
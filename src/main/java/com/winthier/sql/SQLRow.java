@@ -28,6 +28,25 @@ public interface SQLRow {
 
     @Retention(RUNTIME) @Target({FIELD, TYPE}) @interface NotNull { }
 
+    /**
+     * The default priority of async tasks on this table.
+     */
+    @Retention(RUNTIME) @Target(TYPE) @interface Priority {
+        SQLPriority value();
+    }
+
+    /**
+     * Buffer async saves and updates of this table and write each
+     * dirty row once per writeBehindInterval.
+     */
+    @Retention(RUNTIME) @Target(TYPE) @interface WriteBehind { }
+
+    /**
+     * Always read this table from the primary server, never from a
+     * replica.
+     */
+    @Retention(RUNTIME) @Target(TYPE) @interface ReadPrimary { }
+
     @Retention(RUNTIME) @Target(FIELD) @interface Nullable { }
 
     @Retention(RUNTIME) @Target(FIELD) @interface Char {
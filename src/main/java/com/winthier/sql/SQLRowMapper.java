@@ -0,0 +1,16 @@
+package com.winthier.sql;
+
+/**
+ * Turns the selected columns of one result row into an object, see
+ * SQLTable.Finder#findList(SQLRowMapper).
+ */
+@FunctionalInterface
+public interface SQLRowMapper<R> {
+    /**
+     * Map one row.  The array holds the values of the selected
+     * columns in the order of select(), or of all columns, loaded
+     * the same way as entity fields.  It is reused for the next row,
+     * so do not keep it.
+     */
+    R map(Object[] values);
+}
@@ -0,0 +1,167 @@
+package com.winthier.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the prepared statements of one connection for reuse, so the
+ * hot save, update and find paths skip preparing the same SQL over
+ * and over.
+ *
+ * The pool registers a cache for every connection it opens and
+ * unregisters it when the connection is closed.  Statements are
+ * checked out with prepare() and returned when the lease is closed,
+ * so a statement is never used by two threads at once.  The least
+ * recently used statement is closed once the cache is full.
+ */
+final class SQLStatementCache {
+    private static final Map<Connection, SQLStatementCache> CACHES = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final int maxSize;
+    private final LinkedHashMap<Key, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean closed;
+
+    private record Key(String sql, boolean generatedKeys) { }
+
+    private SQLStatementCache(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Start caching statements of a new connection.
+     * @param maxSize the maximum number of statements, or 0 to
+     * disable caching
+     */
+    static void register(Connection connection, int maxSize) {
+        if (maxSize <= 0) return;
+        CACHES.put(connection, new SQLStatementCache(maxSize));
+    }
+
+    /**
+     * Close all cached statements of a connection which is about to
+     * be closed.
+     */
+    static void unregister(Connection connection) {
+        SQLStatementCache cache = CACHES.remove(connection);
+        if (cache != null) cache.closeAll();
+    }
+
+    /**
+     * Get a prepared statement for the given SQL, from the cache if
+     * possible.  Close the lease when done instead of the statement.
+     * @param generatedKeys true to request generated keys
+     */
+    static Lease prepare(Connection connection, String sql, boolean generatedKeys) throws SQLException {
+        final SQLStatementCache cache = CACHES.get(connection);
+        final Key key = new Key(sql, generatedKeys);
+        PreparedStatement statement = cache != null ? cache.checkOut(key) : null;
+        if (statement == null) {
+            statement = generatedKeys
+                ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                : connection.prepareStatement(sql);
+        }
+        return new Lease(cache, key, statement);
+    }
+
+    static Lease prepare(Connection connection, String sql) throws SQLException {
+        return prepare(connection, sql, false);
+    }
+
+    private synchronized PreparedStatement checkOut(Key key) {
+        return closed ? null : statements.remove(key);
+    }
+
+    /**
+     * Put a statement back.
+     * @return true if it was cached, false if the caller must close
+     * it
+     */
+    private boolean checkIn(Key key, PreparedStatement statement) {
+        PreparedStatement evicted = null;
+        synchronized (this) {
+            if (closed || statements.containsKey(key)) return false;
+            statements.put(key, statement);
+            if (statements.size() > maxSize) {
+                Iterator<PreparedStatement> iter = statements.values().iterator();
+                evicted = iter.next();
+                iter.remove();
+            }
+        }
+        if (evicted != null) closeQuietly(evicted);
+        return true;
+    }
+
+    private void closeAll() {
+        final Iterable<PreparedStatement> list;
+        synchronized (this) {
+            closed = true;
+            list = List.copyOf(statements.values());
+            statements.clear();
+        }
+        for (PreparedStatement statement : list) {
+            closeQuietly(statement);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException sqle) { }
+    }
+
+    /**
+     * A checked out statement.
+     */
+    static final class Lease implements AutoCloseable {
+        private final SQLStatementCache cache;
+        private final Key key;
+        private final PreparedStatement statement;
+
+        private Lease(final SQLStatementCache cache, final Key key, final PreparedStatement statement) {
+            this.cache = cache;
+            this.key = key;
+            this.statement = statement;
+        }
+
+        public PreparedStatement getStatement() {
+            return statement;
+        }
+
+        /**
+         * Return the statement to the cache, closing its open result
+         * set and dropping its parameters and any batch left over
+         * from a failure, so that the next user starts clean.  The
+         * statement is closed if it cannot be cached.
+         */
+        @Override
+        public void close() throws SQLException {
+            boolean reusable = cache != null;
+            if (reusable) {
+                try {
+                    ResultSet result = statement.getResultSet();
+                    if (result != null) result.close();
+                    statement.clearParameters();
+                    statement.clearBatch();
+                } catch (SQLException sqle) {
+                    reusable = false;
+                }
+            }
+            if (!reusable || !cache.checkIn(key, statement)) {
+                statement.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return statement.toString();
+        }
+    }
+}
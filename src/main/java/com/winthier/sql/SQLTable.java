@@ -1,10 +1,12 @@
 package com.winthier.sql;
 
+import com.winthier.sql.condition.SQLCondition;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -13,19 +15,38 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.persistence.Index;
 import javax.persistence.OneToMany;
 import javax.persistence.PersistenceException;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Value;
@@ -42,6 +63,16 @@ public final class SQLTable<E extends SQLRow> {
     private final Constructor<E> ctor;
     private final Map<String, SQLColumn> columnNameMap = new HashMap<>();
     private boolean notNull; // default value
+    private SQLPriority priority = SQLPriority.INTERACTIVE;
+    private boolean writeBehind;
+    private boolean readReplica = true;
+    @Getter(AccessLevel.NONE) private final Map<SaveShape, SaveTemplate> saveTemplates = new ConcurrentHashMap<>();
+    @Getter(AccessLevel.NONE) private final Map<Set<String>, UpdateTemplate> updateTemplates = new ConcurrentHashMap<>();
+    @Getter(AccessLevel.NONE) private final String findSql;
+    @Getter(AccessLevel.NONE) private final Map<Class<?>, Projection> projections = new ConcurrentHashMap<>();
+    private static final int MAX_CACHED_ROW_COUNTS = 32;
+    /** The most placeholders the server accepts in one statement. */
+    private static final int MAX_PLACEHOLDERS = 65_535;
 
     @Value @AllArgsConstructor
     protected static class Key {
@@ -54,6 +85,65 @@ public final class SQLTable<E extends SQLRow> {
         }
     }
 
+    /**
+     * The shape of a save statement.  Saves of the same shape share
+     * their SQL.
+     */
+    private record SaveShape(boolean doIgnore, boolean doUpdate, Set<String> columnNames) { }
+
+    /**
+     * The compiled SQL of a save shape.  The statement for n rows is
+     * the head, followed by n tuples, followed by the tail.
+     */
+    private record SaveTemplate(List<SQLColumn> columns, String head, String tuple, String tail,
+                                Map<Integer, String> sqlByRowCount) {
+        String getSql(int rowCount) {
+            String sql = sqlByRowCount.get(rowCount);
+            if (sql != null) return sql;
+            StringBuilder sb = new StringBuilder(head.length() + rowCount * (tuple.length() + 1) + tail.length());
+            sb.append(head).append(tuple);
+            for (int i = 1; i < rowCount; i += 1) {
+                sb.append(",").append(tuple);
+            }
+            sb.append(tail);
+            sql = sb.toString();
+            if (sqlByRowCount.size() < MAX_CACHED_ROW_COUNTS) sqlByRowCount.put(rowCount, sql);
+            return sql;
+        }
+    }
+
+    private record UpdateTemplate(List<SQLColumn> columns, String sql) { }
+
+    /**
+     * The columns and canonical constructor of a record type which
+     * rows are projected into, see Finder#project(Class).
+     */
+    record Projection(List<SQLColumn> columns, Constructor<?> ctor) { }
+
+    /**
+     * Set the default priority of async tasks on this table,
+     * overriding the Priority annotation.
+     */
+    public void setPriority(SQLPriority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Enable or disable write-behind for this table, overriding the
+     * WriteBehind annotation.
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    /**
+     * Allow or forbid reads of this table from replicas, overriding
+     * the ReadPrimary annotation.
+     */
+    public void setReadReplica(boolean readReplica) {
+        this.readReplica = readReplica;
+    }
+
     protected SQLTable(final Class<E> clazz, final SQLDatabase database) {
         this.clazz = clazz;
         this.database = database;
@@ -77,6 +167,16 @@ public final class SQLTable<E extends SQLRow> {
         if (clazz.isAnnotationPresent(SQLRow.NotNull.class)) {
             notNull = true;
         }
+        SQLRow.Priority priorityAnnotation = clazz.getAnnotation(SQLRow.Priority.class);
+        if (priorityAnnotation != null) {
+            priority = priorityAnnotation.value();
+        }
+        if (clazz.isAnnotationPresent(SQLRow.WriteBehind.class)) {
+            writeBehind = true;
+        }
+        if (clazz.isAnnotationPresent(SQLRow.ReadPrimary.class)) {
+            readReplica = false;
+        }
         // Columns
         for (Field field: clazz.getDeclaredFields()) {
             if (Modifier.isTransient(field.getModifiers())
@@ -96,6 +196,9 @@ public final class SQLTable<E extends SQLRow> {
                 keys.put(key.name, key);
             }
         }
+        findSql = idColumn != null
+            ? "SELECT * FROM `" + tableName + "` WHERE `" + idColumn.getColumnName() + "` = ?"
+            : null;
         // Keys
         if (tableAnnotation != null) {
             // Unique constraints
@@ -203,6 +306,17 @@ public final class SQLTable<E extends SQLRow> {
         return result;
     }
 
+    /**
+     * Whether the table has a unique key besides the id, so that a
+     * new row may collide with an existing one.
+     */
+    protected boolean hasUniqueKey() {
+        for (Key key : keys.values()) {
+            if (key.unique) return true;
+        }
+        return false;
+    }
+
     protected String getCreateTableStatement() {
         StringBuilder sb = new StringBuilder();
         sb.append("CREATE TABLE IF NOT EXISTS `").append(getTableName()).append("` (\n  ");
@@ -252,6 +366,14 @@ public final class SQLTable<E extends SQLRow> {
         } catch (InvocationTargetException ite) {
             throw new PersistenceException(ite);
         }
+        return fillInstance(connection, result, columnList, row);
+    }
+
+    /**
+     * Load the current row of a result into an existing instance.
+     * Columns not in the list keep their previous value.
+     */
+    protected E fillInstance(Connection connection, ResultSet result, List<SQLColumn> columnList, E row) {
         for (SQLColumn column : columnList) {
             column.load(connection, row, result);
         }
@@ -261,22 +383,182 @@ public final class SQLTable<E extends SQLRow> {
         return row;
     }
 
+    Projection getProjection(Class<? extends Record> type) {
+        return projections.computeIfAbsent(type, t -> compileProjection(type));
+    }
+
+    /**
+     * Match the components of a record to columns by name, field or
+     * column, and check that their types fit.
+     */
+    private Projection compileProjection(Class<? extends Record> type) {
+        RecordComponent[] components = type.getRecordComponents();
+        if (components.length == 0) throw new IllegalArgumentException("Record without components: " + type.getName());
+        List<SQLColumn> projected = new ArrayList<>(components.length);
+        Class<?>[] parameterTypes = new Class<?>[components.length];
+        for (int i = 0; i < components.length; i += 1) {
+            SQLColumn column = columnNameMap.get(components[i].getName());
+            if (column == null) {
+                throw new IllegalArgumentException("Column not found: " + clazz.getName() + "." + components[i].getName()
+                                                   + " (" + type.getName() + ")");
+            }
+            parameterTypes[i] = components[i].getType();
+            if (!box(parameterTypes[i]).isAssignableFrom(box(column.getFieldType()))) {
+                throw new IllegalArgumentException("Type mismatch: " + type.getName() + "." + components[i].getName()
+                                                   + ": " + parameterTypes[i].getName() + "/" + column.getFieldType().getName());
+            }
+            projected.add(column);
+        }
+        try {
+            Constructor<?> recordCtor = type.getDeclaredConstructor(parameterTypes);
+            recordCtor.setAccessible(true);
+            return new Projection(List.copyOf(projected), recordCtor);
+        } catch (NoSuchMethodException nsme) {
+            throw new IllegalArgumentException(type.getName(), nsme);
+        }
+    }
+
+    private static Class<?> box(Class<?> type) {
+        if (!type.isPrimitive()) return type;
+        if (type == int.class) return Integer.class;
+        if (type == long.class) return Long.class;
+        if (type == float.class) return Float.class;
+        if (type == double.class) return Double.class;
+        if (type == boolean.class) return Boolean.class;
+        return type;
+    }
+
     protected int save(Connection connection, Collection<E> instances, boolean doIgnore, boolean doUpdate, Set<String> columnNames) {
         if (instances.isEmpty()) throw new PersistenceException("Instances cannot be empty");
+        return save(connection, instances.iterator(), doIgnore, doUpdate, columnNames, false);
+    }
+
+    /**
+     * Save instances in chunks, so that neither the statement nor the
+     * values held in memory outgrow the limits of the server.  A
+     * chunk ends after saveChunkSize rows, 65535 placeholders or
+     * about saveChunkBytes of values, whichever comes first.  The
+     * iterator is consumed as the chunks are written.
+     * @param transaction true to commit all chunks together or none
+     * of them.  Ids generated for rolled back rows stay set.  A
+     * single chunk is atomic anyway, so the transaction is only
+     * started once there is a second one.
+     * @return the sum of the results of all chunks
+     */
+    protected int save(Connection connection, Iterator<? extends E> instances, boolean doIgnore, boolean doUpdate,
+                       Set<String> columnNames, boolean transaction) {
+        if (!instances.hasNext()) return 0;
+        database.markWritten(this);
+        final SaveTemplate template = getSaveTemplate(doIgnore, doUpdate, columnNames);
+        final int columnCount = template.columns().size();
+        final int maxRows = Math.max(1, Math.min(database.getConfig().getSaveChunkSize(), MAX_PLACEHOLDERS / columnCount));
+        final long maxBytes = database.getConfig().getSaveChunkBytes();
+        boolean wrap = false;
+        try {
+            int result = 0;
+            List<E> chunk = new ArrayList<>();
+            List<Object> values = new ArrayList<>();
+            long bytes = 0L;
+            while (instances.hasNext()) {
+                E inst = instances.next();
+                chunk.add(inst);
+                for (SQLColumn column : template.columns()) {
+                    Object value = column.getStatementValue(inst);
+                    values.add(value);
+                    bytes += SQLUtil.estimateSize(value);
+                }
+                if (chunk.size() >= maxRows || (maxBytes > 0L && bytes >= maxBytes) || !instances.hasNext()) {
+                    if (transaction && !wrap && instances.hasNext() && connection.getAutoCommit()) {
+                        connection.setAutoCommit(false);
+                        wrap = true;
+                    }
+                    result += saveChunk(connection, template, chunk, values, doIgnore);
+                    chunk.clear();
+                    values.clear();
+                    bytes = 0L;
+                }
+            }
+            if (wrap) connection.commit();
+            return result;
+        } catch (SQLException sqle) {
+            if (wrap) rollback(connection);
+            throw new PersistenceException(sqle);
+        } catch (RuntimeException re) {
+            if (wrap) rollback(connection);
+            throw re;
+        } finally {
+            if (wrap) {
+                try {
+                    connection.setAutoCommit(true);
+                } catch (SQLException sqle) {
+                    database.getPlugin().getLogger().warning("[SQL] Restoring auto commit: " + sqle.getMessage());
+                }
+            }
+        }
+    }
+
+    private void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException sqle) {
+            database.getPlugin().getLogger().warning("[SQL] Rollback failed: " + sqle.getMessage());
+        }
+    }
+
+    private int saveChunk(Connection connection, SaveTemplate template, List<E> instances, List<Object> values, boolean doIgnore) {
+        try (SQLStatementCache.Lease lease = SQLStatementCache.prepare(connection, template.getSql(instances.size()), idColumn != null)) {
+            PreparedStatement statement = lease.getStatement();
+            SQLUtil.formatStatement(statement, values);
+            database.debugLog(statement);
+            int ret;
+            try {
+                ret = statement.executeUpdate();
+            } catch (SQLException sqle) {
+                database.getPlugin().getLogger().warning("Error saving " + tableName + ": " + statement);
+                throw new PersistenceException(sqle);
+            }
+            if (idColumn != null) {
+                try (ResultSet keySet = statement.getGeneratedKeys()) {
+                    for (SQLRow inst : instances) {
+                        if (idColumn.getValue(inst) == null) {
+                            if (keySet.next()) {
+                                Object newId = keySet.getObject(1);
+                                idColumn.setValue(inst, newId);
+                            } else {
+                                if (!doIgnore) {
+                                    throw new PersistenceException("Missing generated ID for instance: " + inst);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            return ret;
+        } catch (SQLException sqle) {
+            throw new PersistenceException(sqle);
+        }
+    }
+
+    private SaveTemplate getSaveTemplate(boolean doIgnore, boolean doUpdate, Set<String> columnNames) {
+        Set<String> names = columnNames == null || columnNames.isEmpty() ? Set.of() : Set.copyOf(columnNames);
+        return saveTemplates.computeIfAbsent(new SaveShape(doIgnore, doUpdate, names), this::compileSave);
+    }
+
+    private SaveTemplate compileSave(SaveShape shape) {
         // Collect all columns used in the statement
         Set<SQLColumn> columnSet = new LinkedHashSet<>(columns.size());
         // An empty updateColumns means that no columns were specified
         // to be saved.  Anything else means we update all the
         // specified columns, and only these ones.
         Set<SQLColumn> updateColumns = new LinkedHashSet<>(columns.size());
-        if (columnNames == null || columnNames.isEmpty()) {
+        if (shape.columnNames().isEmpty()) {
             // If no column names are specified, add all columns
             columnSet.addAll(columns);
             // We never need the primary ID if this is just an insert.
-            if (!doUpdate && idColumn != null) columnSet.remove(idColumn);
+            if (!shape.doUpdate() && idColumn != null) columnSet.remove(idColumn);
         } else {
             // We never need the primary ID if this is just an insert.
-            if (doUpdate && idColumn != null) columnSet.add(idColumn);
+            if (shape.doUpdate() && idColumn != null) columnSet.add(idColumn);
             for (Key key : keys.values()) {
                 if (key.unique) {
                     for (SQLColumn uqColumn : key.columns) columnSet.add(uqColumn);
@@ -287,91 +569,108 @@ public final class SQLTable<E extends SQLRow> {
                     columnSet.add(column);
                 }
             }
-            for (String columnName : columnNames) {
+            for (String columnName : shape.columnNames()) {
                 SQLColumn column = getColumn(columnName);
                 columnSet.add(column);
                 updateColumns.add(column);
             }
         }
-        // Build the statement
-        StringBuilder sb = new StringBuilder();
+        if (columnSet.isEmpty()) throw new PersistenceException("Empty save statement: " + tableName);
         // Insert statement
-        if (doIgnore) {
-            sb.append("INSERT IGNORE INTO `" + getTableName() + "`");
+        StringBuilder head = new StringBuilder();
+        if (shape.doIgnore()) {
+            head.append("INSERT IGNORE INTO `" + getTableName() + "`");
         } else {
-            sb.append("INSERT INTO `" + getTableName() + "`");
+            head.append("INSERT INTO `" + getTableName() + "`");
         }
         // Write the column names
-        if (columnSet.isEmpty()) throw new PersistenceException("Empty save statement: " + tableName);
-        sb.append(" (`");
+        head.append(" (`");
         Iterator<SQLColumn> columnIter = columnSet.iterator();
-        sb.append(columnIter.next().getColumnName());
+        head.append(columnIter.next().getColumnName());
         while (columnIter.hasNext()) {
-            sb.append("`, `").append(columnIter.next().getColumnName());
-        }
-        sb.append("`) VALUES");
-        List<Object> values = new ArrayList<>(instances.size() * columnSet.size());
-        boolean first = true;
-        for (SQLRow inst : instances) {
-            if (!first) sb.append(",");
-            first = false;
-            sb.append(" (");
-            columnIter = columnSet.iterator();
-            columnIter.next().createSaveFragment(inst, sb, values);
-            while (columnIter.hasNext()) {
-                sb.append(", ");
-                columnIter.next().createSaveFragment(inst, sb, values);
-            }
-            sb.append(")");
+            head.append("`, `").append(columnIter.next().getColumnName());
         }
+        head.append("`) VALUES");
+        // One placeholder per column
+        StringBuilder tuple = new StringBuilder(" (?");
+        for (int i = 1; i < columnSet.size(); i += 1) {
+            tuple.append(", ?");
+        }
+        tuple.append(")");
         // Write the ON DUPLICATE UPDATE statement.
-        if (doUpdate) {
-            sb.append(" ON DUPLICATE KEY UPDATE");
+        StringBuilder tail = new StringBuilder();
+        if (shape.doUpdate()) {
+            tail.append(" ON DUPLICATE KEY UPDATE");
             columnIter = updateColumns.isEmpty() ? columnSet.iterator() : updateColumns.iterator();
             SQLColumn column = columnIter.next();
-            sb.append(" `").append(column.getColumnName()).append("`=VALUES(").append(column.getColumnName()).append(")");
+            tail.append(" `").append(column.getColumnName()).append("`=VALUES(").append(column.getColumnName()).append(")");
             while (columnIter.hasNext()) {
                 column = columnIter.next();
                 if (updateColumns.isEmpty() && column.isId()) continue;
-                sb.append(", `").append(column.getColumnName()).append("`=VALUES(`").append(column.getColumnName()).append("`)");
+                tail.append(", `").append(column.getColumnName()).append("`=VALUES(`").append(column.getColumnName()).append("`)");
             }
         }
-        // Build the statement
-        try (PreparedStatement statement = connection.prepareStatement(sb.toString(), Statement.RETURN_GENERATED_KEYS)) {
+        return new SaveTemplate(List.copyOf(columnSet), head.toString(), tuple.toString(), tail.toString(),
+                                new ConcurrentHashMap<>());
+    }
+
+    protected int update(Connection connection, E instance, Set<String> columnNames) {
+        if (idColumn == null) throw new IllegalStateException("No id column: " + tableName);
+        database.markWritten(this);
+        Set<String> names = columnNames == null || columnNames.isEmpty() ? Set.of() : Set.copyOf(columnNames);
+        final UpdateTemplate template = updateTemplates.computeIfAbsent(names, this::compileUpdate);
+        List<Object> values = new ArrayList<>(1 + template.columns().size());
+        for (SQLColumn column : template.columns()) {
+            values.add(column.getStatementValue(instance));
+        }
+        values.add(idColumn.getValue(instance));
+        try (SQLStatementCache.Lease lease = SQLStatementCache.prepare(connection, template.sql())) {
+            PreparedStatement statement = lease.getStatement();
             SQLUtil.formatStatement(statement, values);
             database.debugLog(statement);
-            int ret;
-            try {
-                ret = statement.executeUpdate();
-            } catch (SQLException sqle) {
-                database.getPlugin().getLogger().warning("Error saving " + tableName + ": " + statement);
-                throw new PersistenceException(sqle);
-            }
-            if (idColumn != null) {
-                ResultSet keySet = statement.getGeneratedKeys();
-                for (SQLRow inst : instances) {
-                    if (idColumn.getValue(inst) == null) {
-                        if (keySet.next()) {
-                            Object newId = keySet.getObject(1);
-                            idColumn.setValue(inst, newId);
-                        } else {
-                            if (!doIgnore) {
-                                throw new PersistenceException("Missing generated ID for instance: " + inst);
-                            }
-                        }
-                    }
-                }
-            }
+            int ret = statement.executeUpdate();
             return ret;
         } catch (SQLException sqle) {
             throw new PersistenceException(sqle);
         }
     }
 
-    protected int update(Connection connection, E instance, Set<String> columnNames) {
+    /**
+     * Update many rows with one batch of the same statement.  It
+     * takes a single round trip if the rewriteBatchedStatements
+     * option is on, which is the default.
+     * @return the number of affected rows for each instance, in
+     * iteration order.  The driver may report
+     * Statement.SUCCESS_NO_INFO instead.
+     */
+    protected int[] update(Connection connection, Collection<E> instances, Set<String> columnNames) {
         if (idColumn == null) throw new IllegalStateException("No id column: " + tableName);
+        if (instances.isEmpty()) return new int[0];
+        database.markWritten(this);
+        Set<String> names = columnNames == null || columnNames.isEmpty() ? Set.of() : Set.copyOf(columnNames);
+        final UpdateTemplate template = updateTemplates.computeIfAbsent(names, this::compileUpdate);
+        List<Object> values = new ArrayList<>(1 + template.columns().size());
+        try (SQLStatementCache.Lease lease = SQLStatementCache.prepare(connection, template.sql())) {
+            PreparedStatement statement = lease.getStatement();
+            for (E instance : instances) {
+                values.clear();
+                for (SQLColumn column : template.columns()) {
+                    values.add(column.getStatementValue(instance));
+                }
+                values.add(idColumn.getValue(instance));
+                SQLUtil.formatStatement(statement, values);
+                statement.addBatch();
+            }
+            database.debugLog(template.sql() + " x" + instances.size());
+            return statement.executeBatch();
+        } catch (SQLException sqle) {
+            throw new PersistenceException(sqle);
+        }
+    }
+
+    private UpdateTemplate compileUpdate(Set<String> columnNames) {
         List<SQLColumn> columnList = new ArrayList<>();
-        if (columnNames == null || columnNames.isEmpty()) {
+        if (columnNames.isEmpty()) {
             columnList.addAll(columns);
             columnList.remove(idColumn);
         } else {
@@ -380,56 +679,58 @@ public final class SQLTable<E extends SQLRow> {
                 columnList.add(column);
             }
         }
-        // Build the statement
-        List<Object> values = new ArrayList<>(1 + columnList.size());
         StringBuilder sb = new StringBuilder();
-        sb.append("UPDATE `").append(getTableName()).append("` SET");
+        sb.append("UPDATE `").append(getTableName()).append("` SET ");
         Iterator<SQLColumn> iter = columnList.iterator();
-        sb.append(" ");
-        SQLColumn column = iter.next();
-        sb.append(column.createSetFragment(column.getValue(instance), values));
+        sb.append("`").append(iter.next().getColumnName()).append("` = ?");
         while (iter.hasNext()) {
-            column = iter.next();
-            sb.append(", ");
-            sb.append(column.createSetFragment(column.getValue(instance), values));
+            sb.append(", `").append(iter.next().getColumnName()).append("` = ?");
         }
         sb.append(" WHERE `").append(idColumn.getColumnName()).append("` = ?");
-        values.add(idColumn.getValue(instance));
-        // Build the statement
-        try (PreparedStatement statement = connection.prepareStatement(sb.toString())) {
-            SQLUtil.formatStatement(statement, values);
-            database.debugLog(statement);
-            int ret = statement.executeUpdate();
-            return ret;
-        } catch (SQLException sqle) {
-            throw new PersistenceException(sqle);
-        }
+        return new UpdateTemplate(List.copyOf(columnList), sb.toString());
     }
 
     protected int delete(Connection connection, Collection<E> collection) {
         if (collection.isEmpty()) return -1;
         if (idColumn == null) throw new PersistenceException("No id column defined: " + clazz.getName());
-        Iterator<E> iter = collection.iterator();
-        StringBuilder sb = new StringBuilder();
-        sb.append((Integer) idColumn.getValue(iter.next()));
-        while (iter.hasNext()) {
-            sb.append(", ").append((Integer) idColumn.getValue(iter.next()));
-        }
-        try (Statement statement = connection.createStatement()) {
-            String sql = "DELETE FROM " + getTableName() + " WHERE " + idColumn.getColumnName() + " IN (" + sb.toString() + ")";
-            database.debugLog(sql);
-            return statement.executeUpdate(sql);
-        } catch (SQLException sqle) {
-            throw new PersistenceException(sqle);
+        database.markWritten(this);
+        List<Object> ids = new ArrayList<>(collection.size());
+        for (E instance : collection) {
+            Object id = idColumn.getValue(instance);
+            if (id != null) ids.add(id);
+        }
+        if (ids.isEmpty()) return 0;
+        // Delete in chunks so no statement grows too large or locks
+        // too many rows at once.
+        final int chunkSize = Math.max(1, Math.min(database.getConfig().getDeleteChunkSize(), MAX_PLACEHOLDERS));
+        int result = 0;
+        for (int start = 0; start < ids.size(); start += chunkSize) {
+            List<Object> chunk = ids.subList(start, Math.min(ids.size(), start + chunkSize));
+            StringBuilder sb = new StringBuilder();
+            sb.append("DELETE FROM `").append(getTableName()).append("` WHERE `").append(idColumn.getColumnName()).append("` IN (?");
+            for (int i = 1; i < chunk.size(); i += 1) {
+                sb.append(", ?");
+            }
+            sb.append(")");
+            try (SQLStatementCache.Lease lease = SQLStatementCache.prepare(connection, sb.toString())) {
+                PreparedStatement statement = lease.getStatement();
+                SQLUtil.formatStatement(statement, chunk);
+                database.debugLog(statement);
+                result += statement.executeUpdate();
+            } catch (SQLException sqle) {
+                throw new PersistenceException(sqle);
+            }
         }
+        return result;
     }
 
     protected E find(Connection connection, int id) {
         if (idColumn == null) throw new PersistenceException("No id column defined: " + clazz.getName());
-        try (Statement statement = connection.createStatement()) {
-            String sql = "SELECT * FROM " + getTableName() + " WHERE " + idColumn.getColumnName() + " = " + id;
-            database.debugLog(sql);
-            ResultSet result = statement.executeQuery(sql);
+        try (SQLStatementCache.Lease lease = SQLStatementCache.prepare(connection, findSql)) {
+            PreparedStatement statement = lease.getStatement();
+            statement.setInt(1, id);
+            database.debugLog(statement);
+            ResultSet result = statement.executeQuery();
             E row;
             if (result.next()) {
                 row = createInstance(connection, result, columns);
@@ -463,6 +764,43 @@ public final class SQLTable<E extends SQLRow> {
         }
     }
 
+    /**
+     * Append a list of placeholders, padded to a power of two with
+     * copies of the last value, unless that would exceed the
+     * placeholder limit.
+     */
+    private static void appendInList(StringBuilder sb, List<Object> values, List<Object> items) {
+        int size = Integer.highestOneBit(items.size());
+        if (size < items.size()) size <<= 1;
+        if (size > MAX_PLACEHOLDERS) size = items.size();
+        sb.append("(?");
+        for (int i = 1; i < size; i += 1) {
+            sb.append(", ?");
+        }
+        sb.append(")");
+        values.addAll(items);
+        final Object last = items.get(items.size() - 1);
+        for (int i = items.size(); i < size; i += 1) {
+            values.add(last);
+        }
+    }
+
+    /**
+     * The WHERE clause of a finder with its values.
+     */
+    record Where(String clause, List<Object> values) { }
+
+    /**
+     * One column of the order of a finder.
+     */
+    private record OrderKey(SQLColumn column, boolean ascending) { }
+
+    /**
+     * A long IN list, which is inserted into the clause at the given
+     * positions, in chunks.
+     */
+    private record SplitIn(int sbIndex, int valueIndex, List<Object> items) { }
+
     public final class Finder {
         private final StringBuilder sb = new StringBuilder();
         private final List<Object> values = new ArrayList<>();
@@ -470,17 +808,50 @@ public final class SQLTable<E extends SQLRow> {
         private int offset = -1;
         private int limit = -1;
         private final List<String> order = new ArrayList<>();
+        private final List<OrderKey> orderKeys = new ArrayList<>();
         private static final String DEFAULT_CONJ = " AND ";
         private List<SQLColumn> columnList = null;
+        private SQLPriority priority = SQLTable.this.priority;
+        private boolean primary;
+        /** The one IN list which is too long for a single query. */
+        private SplitIn splitIn;
+        /** The number of open parentheses. */
+        private int depth;
+        /** True once or() was called outside of parentheses. */
+        private boolean topLevelOr;
 
         Finder() { }
 
+        /**
+         * A finder with the same conditions and settings.
+         */
+        private Finder copy() {
+            Finder result = new Finder();
+            result.sb.append(sb);
+            result.values.addAll(values);
+            result.conj = conj;
+            result.offset = offset;
+            result.limit = limit;
+            result.order.addAll(order);
+            result.orderKeys.addAll(orderKeys);
+            result.columnList = columnList;
+            result.priority = priority;
+            result.primary = primary;
+            result.splitIn = splitIn;
+            result.depth = depth;
+            result.topLevelOr = topLevelOr;
+            return result;
+        }
+
         private Finder compare(String label, Comparison comp, Object value) {
             if (value == null) throw new IllegalArgumentException("Value cannot be null!");
             SQLColumn column = getColumn(label);
             String columnName = column.getColumnName();
             sb.append(conj).append("`").append(columnName).append("`").append(" " + comp.symbol + " ?");
-            if (column.getType() == SQLType.REFERENCE) {
+            if (value instanceof SQLParameter) {
+                // Bound later, see Query
+                values.add(value);
+            } else if (column.getType() == SQLType.REFERENCE) {
                 Class<?> type = column.getFieldType();
                 SQLTable refTable = database.findTable(type);
                 if (refTable.idColumn == null) {
@@ -524,11 +895,13 @@ public final class SQLTable<E extends SQLRow> {
             sb.append(conj);
             conj = "";
             sb.append("(");
+            depth += 1;
             return this;
         }
 
         public Finder closeParen() {
             sb.append(")");
+            depth -= 1;
             return this;
         }
 
@@ -583,43 +956,43 @@ public final class SQLTable<E extends SQLRow> {
             return this;
         }
 
+        /**
+         * Match any of the given values.  The list of placeholders is
+         * padded to the next power of two by repeating the last value,
+         * so lists of similar sizes share their statement.  A list
+         * longer than inListChunkSize is split into several queries
+         * whose results are merged, see getWheres(), as long as it is
+         * joined to the rest of the clause with AND.
+         */
         public Finder in(String label, Collection<?> col) {
             SQLColumn column = getColumn(label);
             String columnName = column.getColumnName();
-            Iterator<?> iter = col.iterator();
-            if (!iter.hasNext()) {
+            if (col.isEmpty()) {
                 sb.append(conj).append("`").append(columnName).append("`").append(" != `").append(columnName).append("`");
                 conj = DEFAULT_CONJ;
                 return this;
             }
-            sb.append(conj).append("`").append(columnName).append("`").append(" IN (?");
-            if (column.getType() == SQLType.REFERENCE) {
-                Class<?> type = column.getFieldType();
-                Object value = iter.next();
-                if (!(value instanceof SQLRow instance)) {
-                    throw new IllegalArgumentException("Required type " + type.getName() + " (SQLRow)"
-                                                       + ", got " + value.getClass().getName());
-                }
-                values.add(database.findTable(type).idColumn.getValue(instance));
-            } else {
-                values.add(iter.next());
-            }
-            while (iter.hasNext()) {
-                sb.append(", ?");
+            List<Object> items = new ArrayList<>(col.size());
+            for (Object value : col) {
                 if (column.getType() == SQLType.REFERENCE) {
                     Class<?> type = column.getFieldType();
-                    Object value = iter.next();
                     if (!(value instanceof SQLRow instance)) {
                         throw new IllegalArgumentException("Required type " + type.getName() + " (SQLRow)"
                                                            + ", got " + value.getClass().getName());
                     }
-                    values.add(database.findTable(type).idColumn.getValue(instance));
+                    items.add(database.findTable(type).idColumn.getValue(instance));
                 } else {
-                    values.add(iter.next());
+                    items.add(value);
                 }
             }
-            sb.append(")");
+            sb.append(conj).append("`").append(columnName).append("`").append(" IN ");
             conj = DEFAULT_CONJ;
+            if (splitIn == null && depth == 0 && items.size() > database.getConfig().getInListChunkSize()) {
+                // Distinct values, so the chunks do not overlap.
+                splitIn = new SplitIn(sb.length(), values.size(), List.copyOf(new LinkedHashSet<>(items)));
+                return this;
+            }
+            appendInList(sb, values, items);
             return this;
         }
 
@@ -639,9 +1012,37 @@ public final class SQLTable<E extends SQLRow> {
 
         public Finder or() {
             conj = " OR ";
+            if (depth == 0) topLevelOr = true;
             return this;
         }
 
+        /**
+         * Prepare a term which every row must match, whatever the
+         * clause so far.  A clause with a top level OR is put in
+         * parentheses first, because AND binds more tightly.
+         */
+        private void prepareAndTerm() {
+            if (depth != 0) throw new IllegalStateException("Unclosed parenthesis: " + sb);
+            if (sb.length() == 0) {
+                conj = " WHERE ";
+                return;
+            }
+            if (topLevelOr) {
+                if (splitIn != null) {
+                    // Never split anyway, so insert the list now.
+                    Where where = getWhere();
+                    sb.setLength(0);
+                    sb.append(where.clause());
+                    values.clear();
+                    values.addAll(where.values());
+                    splitIn = null;
+                }
+                sb.insert(" WHERE ".length(), "(").append(")");
+                topLevelOr = false;
+            }
+            conj = DEFAULT_CONJ;
+        }
+
         public Finder and() {
             conj = " AND ";
             return this;
@@ -650,9 +1051,377 @@ public final class SQLTable<E extends SQLRow> {
         private Finder orderBy(String label, String direction) {
             SQLColumn column = getColumn(label);
             order.add("`" + column.getColumnName() + "` " + direction);
+            orderKeys.add(new OrderKey(column, direction.equals("ASC")));
+            return this;
+        }
+
+        // --- Finder: streaming
+
+        /**
+         * Stream the matching rows without collecting them into a
+         * list, so memory stays flat however many rows there are.
+         * The rows are fetched from the server as the stream is
+         * consumed, on a connection of its own, which is held until
+         * the stream is closed.  Always close the stream, preferably
+         * with try-with-resources.  Closing it early aborts the
+         * connection rather than reading out the remaining rows.
+         * Referenced rows are looked up on the connection of the
+         * calling thread.
+         */
+        public Stream<E> stream() {
+            return stream(null);
+        }
+
+        private Stream<E> stream(E flyweight) {
+            final List<SQLColumn> resultColumns = columnList != null ? columnList : columns;
+            final StreamingResult streaming = openStream();
+            boolean hasReference = false;
+            for (SQLColumn column : resultColumns) {
+                hasReference |= column.getType() == SQLType.REFERENCE;
+            }
+            // The streaming connection is busy until the end.
+            final Connection lookup = hasReference ? database.getConnection() : streaming.lease.connection();
+            final RowIterator iter = new RowIterator(streaming, lookup, resultColumns, flyweight);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iter, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(streaming::close);
+        }
+
+        /**
+         * Run the select statement in streaming mode on a connection
+         * of its own, see stream().
+         */
+        private StreamingResult openStream() {
+            final Where where = getWhere();
+            final String sql = getSelectSql(where);
+            final List<Object> boundValues = where.values();
+            final SQLDatabase.ReadLease lease = database.borrowReadConnection(SQLTable.this, primary);
+            final PreparedStatement statement;
+            final ResultSet result;
+            try {
+                statement = lease.connection().prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            } catch (SQLException sqle) {
+                lease.discard();
+                throw new PersistenceException(sqle);
+            }
+            try {
+                final int fetchSize = database.getConfig().getStreamFetchSize();
+                statement.setFetchSize(fetchSize > 0 ? fetchSize : Integer.MIN_VALUE);
+                SQLUtil.formatStatement(statement, boundValues);
+                database.debugLog(statement);
+                result = statement.executeQuery();
+            } catch (SQLException sqle) {
+                try {
+                    statement.close();
+                } catch (SQLException sqle2) { }
+                lease.discard();
+                throw new PersistenceException(sqle);
+            }
+            return new StreamingResult(lease, statement, result);
+        }
+
+        /**
+         * An open streaming query.  Closing it gives the connection
+         * back, unless rows are left unread, in which case the
+         * connection is aborted and thrown away.  Closing the result
+         * first would read every remaining row.
+         */
+        private final class StreamingResult implements AutoCloseable {
+            private final SQLDatabase.ReadLease lease;
+            private final PreparedStatement statement;
+            private final ResultSet result;
+            /** True once every row was read. */
+            private boolean done;
+
+            StreamingResult(final SQLDatabase.ReadLease lease, final PreparedStatement statement, final ResultSet result) {
+                this.lease = lease;
+                this.statement = statement;
+                this.result = result;
+            }
+
+            boolean next() {
+                if (done) return false;
+                try {
+                    done = !result.next();
+                } catch (SQLException sqle) {
+                    throw new PersistenceException(sqle);
+                }
+                return !done;
+            }
+
+            /**
+             * Advance and read the next row into the target.
+             * @return false if there are no more rows
+             */
+            <T> boolean next(T target, ColumnReader<? super T> reader) {
+                if (!next()) return false;
+                try {
+                    reader.read(target, result);
+                } catch (SQLException sqle) {
+                    throw new PersistenceException(sqle);
+                }
+                return true;
+            }
+
+            @Override
+            public void close() {
+                if (!done) {
+                    // Also closes the statement and result.
+                    lease.discard();
+                    return;
+                }
+                try {
+                    result.close();
+                    statement.close();
+                } catch (SQLException sqle) {
+                    lease.discard();
+                    return;
+                }
+                lease.close();
+            }
+        }
+
+        /**
+         * Feed each matching row to a consumer, see stream().
+         */
+        public void forEach(Consumer<? super E> consumer) {
+            try (Stream<E> stream = stream()) {
+                stream.forEach(consumer);
+            }
+        }
+
+        public void forEachAsync(Consumer<? super E> consumer, Consumer<Integer> callback) {
+            database.supplyAsync(getTableName(), priority, () -> {
+                    int count = 0;
+                    try (Stream<E> stream = stream()) {
+                        for (Iterator<E> iter = stream.iterator(); iter.hasNext(); count += 1) {
+                            consumer.accept(iter.next());
+                        }
+                    }
+                    return count;
+                }, callback);
+        }
+
+        /**
+         * Feed each matching row to a consumer, refilling the same
+         * instance every time instead of creating one per row.  This
+         * suits long read-only passes which aggregate or filter, as
+         * they allocate nothing per row but the column values.  The
+         * consumer must not keep the instance, nor save it, since it
+         * changes with the next row.  Columns left out by select()
+         * keep whatever value the instance had.  See stream() for
+         * the connection used.
+         * @param row the instance to reuse
+         * @return the number of rows
+         */
+        public int scan(E row, Consumer<? super E> consumer) {
+            if (row == null) throw new IllegalArgumentException("Row cannot be null");
+            int count = 0;
+            try (Stream<E> stream = stream(row)) {
+                for (Iterator<E> iter = stream.iterator(); iter.hasNext(); count += 1) {
+                    consumer.accept(iter.next());
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Scan on an async worker, see scan().  The consumer runs on
+         * the worker, the callback with the row count on the primary
+         * thread.
+         */
+        public void scanAsync(E row, Consumer<? super E> consumer, Consumer<Integer> callback) {
+            if (row == null) throw new IllegalArgumentException("Row cannot be null");
+            database.supplyAsync(getTableName(), priority, () -> scan(row, consumer), callback);
+        }
+
+        private final class RowIterator implements Iterator<E> {
+            private final StreamingResult streaming;
+            private final Connection lookup;
+            private final List<SQLColumn> resultColumns;
+            /** The instance to refill, or null for a new one per row. */
+            private final E flyweight;
+            private boolean fetched;
+            private boolean hasRow;
+
+            RowIterator(final StreamingResult streaming, final Connection lookup, final List<SQLColumn> resultColumns, final E flyweight) {
+                this.streaming = streaming;
+                this.lookup = lookup;
+                this.resultColumns = resultColumns;
+                this.flyweight = flyweight;
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (!fetched) {
+                    hasRow = streaming.next();
+                    fetched = true;
+                }
+                return hasRow;
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                fetched = false;
+                return flyweight != null
+                    ? fillInstance(lookup, streaming.result, resultColumns, flyweight)
+                    : createInstance(lookup, streaming.result, resultColumns);
+            }
+        }
+
+        // --- Finder: keyset pagination
+
+        /**
+         * Make sure the order ends with the id column, so that every
+         * row has a unique position.  The id follows the direction of
+         * the last order column.
+         */
+        private List<OrderKey> getSeekKeys() {
+            if (idColumn == null) throw new IllegalStateException("Keyset pagination requires id column: " + tableName);
+            for (OrderKey key : orderKeys) {
+                if (key.column() == idColumn) return orderKeys;
+            }
+            if (orderKeys.isEmpty() || orderKeys.get(orderKeys.size() - 1).ascending()) {
+                orderByAscending(idColumn.getFieldName());
+            } else {
+                orderByDescending(idColumn.getFieldName());
+            }
+            return orderKeys;
+        }
+
+        /**
+         * Only find rows which come after the given row in the order
+         * of this finder.  Unlike an offset, this costs the same
+         * however deep the page is, given an index on the order
+         * columns.  Set the order first.  The order columns must not
+         * be null.  This applies to the whole clause, even if it
+         * contains or().
+         */
+        public Finder after(E row) {
+            return after(cursorOf(row));
+        }
+
+        /**
+         * Only find rows which come after the cursor of a previous
+         * page, see findPage().
+         */
+        public Finder after(SQLPage.Cursor cursor) {
+            final List<OrderKey> keys = getSeekKeys();
+            final List<Object> cursorValues = cursor.getValues();
+            if (cursorValues.size() != keys.size()) {
+                throw new IllegalArgumentException("Cursor does not match order: " + cursor + ", " + order);
+            }
+            prepareAndTerm();
+            sb.append(conj);
+            conj = DEFAULT_CONJ;
+            boolean uniform = true;
+            for (OrderKey key : keys) {
+                uniform &= key.ascending() == keys.get(0).ascending();
+            }
+            if (uniform) {
+                // (a, b) > (?, ?)
+                List<String> names = new ArrayList<>(keys.size());
+                List<String> marks = new ArrayList<>(keys.size());
+                for (OrderKey key : keys) {
+                    names.add("`" + key.column().getColumnName() + "`");
+                    marks.add("?");
+                }
+                sb.append("(").append(String.join(", ", names)).append(")")
+                    .append(keys.get(0).ascending() ? " > " : " < ")
+                    .append("(").append(String.join(", ", marks)).append(")");
+                values.addAll(cursorValues);
+                return this;
+            }
+            // Mixed directions: (a > ?) OR (a = ? AND b < ?) OR ...
+            List<String> terms = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i += 1) {
+                StringBuilder term = new StringBuilder("(");
+                for (int j = 0; j < i; j += 1) {
+                    term.append("`").append(keys.get(j).column().getColumnName()).append("` = ? AND ");
+                    values.add(cursorValues.get(j));
+                }
+                OrderKey key = keys.get(i);
+                term.append("`").append(key.column().getColumnName()).append("`")
+                    .append(key.ascending() ? " > ?" : " < ?").append(")");
+                values.add(cursorValues.get(i));
+                terms.add(term.toString());
+            }
+            sb.append("(").append(String.join(" OR ", terms)).append(")");
             return this;
         }
 
+        private SQLPage.Cursor cursorOf(E row) {
+            final List<OrderKey> keys = getSeekKeys();
+            List<Object> cursorValues = new ArrayList<>(keys.size());
+            for (OrderKey key : keys) {
+                Object value = key.column().getStatementValue(row);
+                if (value == null) {
+                    throw new IllegalStateException("Order column is null: " + key.column().getColumnName() + ", " + row);
+                }
+                cursorValues.add(value);
+            }
+            return new SQLPage.Cursor(cursorValues);
+        }
+
+        private SQLPage<E> findPage(Connection connection, int size) {
+            if (offset > -1) throw new IllegalStateException("Keyset pagination does not use an offset");
+            getSeekKeys();
+            // One more row tells us if there is a next page.
+            limit(size + 1);
+            List<E> rows = findList(connection);
+            if (rows.size() <= size) return new SQLPage<>(rows, null);
+            rows = new ArrayList<>(rows.subList(0, size));
+            return new SQLPage<>(rows, cursorOf(rows.get(size - 1)));
+        }
+
+        /**
+         * Find the next page of at most size rows, in the order of
+         * this finder plus the id.  Continue with a new finder with
+         * the same conditions and order, and after(page.getCursor()).
+         */
+        public SQLPage<E> findPage(int size) {
+            if (size <= 0) throw new IllegalArgumentException("size=" + size);
+            return database.withReadConnection(SQLTable.this, primary, connection -> findPage(connection, size));
+        }
+
+        public void findPageAsync(int size, Consumer<SQLPage<E>> callback) {
+            database.supplyAsync(getTableName(), priority, () -> findPage(size), callback);
+        }
+
+        public CompletableFuture<SQLPage<E>> findPageFuture(int size) {
+            return database.supplyAsync(getTableName(), priority, () -> findPage(size));
+        }
+
+        /**
+         * Publish the matching rows to subscribers on the primary
+         * thread, see publish(int, Executor).
+         */
+        public Flow.Publisher<E> publish(int batchSize) {
+            return publish(batchSize, database.getMainThreadExecutor());
+        }
+
+        /**
+         * Publish the matching rows with backpressure.  Rows are
+         * fetched by the async workers in keyset pages of at most
+         * batchSize, only when a subscriber requests more than it has
+         * received, and delivered via the executor.  Requesting a
+         * batch per tick thus spreads a large result over many ticks
+         * without ever loading it whole.  The order is extended by
+         * the id as in findPage().  The limit, if any, caps the total.
+         * Changes to this finder after the call have no effect.
+         */
+        public Flow.Publisher<E> publish(int batchSize, Executor executor) {
+            if (batchSize <= 0) throw new IllegalArgumentException("batchSize=" + batchSize);
+            if (offset > -1) throw new IllegalStateException("Keyset pagination does not use an offset");
+            getSeekKeys();
+            final Finder base = copy();
+            return new SQLPublisher<E>((cursor, size) -> database.supplyAsync(getTableName(), base.priority, () -> {
+                        Finder finder = base.copy();
+                        if (cursor != null) finder.after(cursor);
+                        return finder.findPage(size);
+                    }), batchSize, limit > 0 ? limit : -1, executor);
+        }
+
         public Finder limit(int newLimit) {
             limit = newLimit;
             return this;
@@ -663,6 +1432,15 @@ public final class SQLTable<E extends SQLRow> {
             return this;
         }
 
+        /**
+         * Set the priority of the async methods of this finder.  The
+         * default is the priority of the table.
+         */
+        public Finder priority(SQLPriority newPriority) {
+            priority = newPriority;
+            return this;
+        }
+
         public Finder orderByAscending(String label) {
             orderBy(label, "ASC");
             return this;
@@ -677,57 +1455,102 @@ public final class SQLTable<E extends SQLRow> {
             return this;
         }
 
+        /**
+         * Add a condition tree, see SQLConditionList.  Its values may
+         * be SQLParameter placeholders.
+         */
+        public Finder where(SQLCondition condition) {
+            sb.append(conj).append(condition.compile(values));
+            conj = DEFAULT_CONJ;
+            return this;
+        }
+
+        /**
+         * Compile this finder into a reusable query.  The query takes
+         * a snapshot of the finder and can then be executed any
+         * number of times, from any thread, with different values for
+         * the SQLParameter placeholders.
+         */
+        public Query compile() {
+            if (splitIn != null) {
+                throw new IllegalStateException("IN list too long to compile: " + splitIn.items().size());
+            }
+            final String base = "SELECT " + getColumnNameList() + " FROM `" + getTableName() + "`" + sb + getOrderBy();
+            final String uniqueSql = base + " LIMIT 1" + (offset > -1 ? " OFFSET " + offset : "");
+            final String countSql = "SELECT count(*) row_count FROM `" + getTableName() + "`" + sb;
+            return new Query(base + getLimit(), uniqueSql, countSql, values, columnList, priority, primary);
+        }
+
+        /**
+         * Read from the primary server even if there are replicas,
+         * for example right after a write elsewhere.
+         */
+        public Finder primary() {
+            this.primary = true;
+            return this;
+        }
+
         // --- Finder result methods
 
         private E findUnique(Connection connection) {
             limit(1);
-            try (PreparedStatement statement = getSelectStatement(connection)) {
-                database.debugLog(statement);
-                ResultSet result = statement.executeQuery();
-                if (result.next()) {
-                    return createInstance(connection, result, columnList != null ? columnList : columns);
-                } else {
-                    return null;
+            for (Where where : getWheres(canSplit())) {
+                try (SQLStatementCache.Lease lease = getSelectStatement(connection, where)) {
+                    PreparedStatement statement = lease.getStatement();
+                    database.debugLog(statement);
+                    ResultSet result = statement.executeQuery();
+                    if (result.next()) {
+                        return createInstance(connection, result, columnList != null ? columnList : columns);
+                    }
+                } catch (SQLException sqle) {
+                    throw new PersistenceException(sqle);
                 }
-            } catch (SQLException sqle) {
-                throw new PersistenceException(sqle);
             }
+            return null;
         }
 
         public E findUnique() {
-            return findUnique(database.getConnection());
+            return database.withReadConnection(SQLTable.this, primary, this::findUnique);
         }
 
         public void findUniqueAsync(Consumer<E> callback) {
-            database.scheduleAsyncTask(() -> {
-                    E result = findUnique(database.getAsyncConnection());
-                    if (callback != null) Bukkit.getScheduler().runTask(database.getPlugin(), () -> callback.accept(result));
-                });
+            database.supplyAsync(getTableName(), priority, () -> database.withReadConnection(SQLTable.this, primary, this::findUnique), callback);
+        }
+
+        public CompletableFuture<E> findUniqueFuture() {
+            return database.supplyAsync(getTableName(), priority, () -> database.withReadConnection(SQLTable.this, primary, this::findUnique));
         }
 
         private List<E> findList(Connection connection) {
             List<E> list = new ArrayList<>();
-            try (PreparedStatement statement = getSelectStatement(connection)) {
-                database.debugLog(statement);
-                ResultSet result = statement.executeQuery();
-                while (result.next()) {
-                    list.add(createInstance(connection, result, columnList != null ? columnList : columns));
+            for (Where where : getWheres(canSplit())) {
+                try (SQLStatementCache.Lease lease = getSelectStatement(connection, where)) {
+                    PreparedStatement statement = lease.getStatement();
+                    database.debugLog(statement);
+                    ResultSet result = statement.executeQuery();
+                    while (result.next()) {
+                        list.add(createInstance(connection, result, columnList != null ? columnList : columns));
+                    }
+                } catch (SQLException sqle) {
+                    throw new PersistenceException(sqle);
+                }
+                if (limit > 0 && list.size() >= limit) {
+                    return list.size() > limit ? new ArrayList<>(list.subList(0, limit)) : list;
                 }
-            } catch (SQLException sqle) {
-                throw new PersistenceException(sqle);
             }
             return list;
         }
 
         public List<E> findList() {
-            return findList(database.getConnection());
+            return database.withReadConnection(SQLTable.this, primary, this::findList);
         }
 
         public void findListAsync(Consumer<List<E>> callback) {
-            database.scheduleAsyncTask(() -> {
-                    List<E> result = findList(database.getAsyncConnection());
-                    Bukkit.getScheduler().runTask(database.getPlugin(), () -> callback.accept(result));
-                });
+            database.supplyAsync(getTableName(), priority, () -> database.withReadConnection(SQLTable.this, primary, this::findList), callback);
+        }
+
+        public CompletableFuture<List<E>> findListFuture() {
+            return database.supplyAsync(getTableName(), priority, () -> database.withReadConnection(SQLTable.this, primary, this::findList));
         }
 
         public <E> List<E> findValues(String columnName, Class<E> ofType) {
@@ -736,32 +1559,299 @@ public final class SQLTable<E extends SQLRow> {
                 throw new IllegalStateException(ofType.getName() + "/" + column.getType());
             }
             columnList = List.of(column);
-            List<E> list = new ArrayList<>();
-            Connection connection = database.getConnection();
-            try (PreparedStatement statement = getSelectStatement(connection)) {
-                database.debugLog(statement);
-                ResultSet result = statement.executeQuery();
-                while (result.next()) {
-                    Object obj = column.getObject(connection, result);
-                    if (ofType.isInstance(obj)) {
-                        list.add(ofType.cast(obj));
+            return database.withReadConnection(SQLTable.this, primary, connection -> {
+                    List<E> list = new ArrayList<>();
+                    for (Where where : getWheres(canSplit())) {
+                        try (SQLStatementCache.Lease lease = getSelectStatement(connection, where)) {
+                            PreparedStatement statement = lease.getStatement();
+                            database.debugLog(statement);
+                            ResultSet result = statement.executeQuery();
+                            while (result.next()) {
+                                Object obj = column.getObject(connection, result);
+                                if (ofType.isInstance(obj)) {
+                                    list.add(ofType.cast(obj));
+                                }
+                            }
+                        } catch (SQLException sqle) {
+                            throw new IllegalStateException(sqle);
+                        }
+                        if (limit > 0 && list.size() >= limit) {
+                            return list.size() > limit ? new ArrayList<>(list.subList(0, limit)) : list;
+                        }
                     }
+                    return list;
+                });
+        }
+
+        public <E> void findValuesAsync(String columnName, Class<E> ofType, Consumer<List<E>> callback) {
+            database.supplyAsync(getTableName(), priority, () -> findValues(columnName, ofType), callback);
+        }
+
+        public <E> CompletableFuture<List<E>> findValuesFuture(String columnName, Class<E> ofType) {
+            return database.supplyAsync(getTableName(), priority, () -> findValues(columnName, ofType));
+        }
+
+        /**
+         * Find the matching rows and map the selected columns of each
+         * with the mapper, without creating entities.  The values are
+         * those of select(), or of all columns.
+         */
+        public <R> List<R> findList(SQLRowMapper<R> mapper) {
+            final List<SQLColumn> resultColumns = columnList != null ? columnList : columns;
+            return database.withReadConnection(SQLTable.this, primary, connection -> findMapped(connection, resultColumns, mapper));
+        }
+
+        public <R> void findListAsync(SQLRowMapper<R> mapper, Consumer<List<R>> callback) {
+            database.supplyAsync(getTableName(), priority, () -> findList(mapper), callback);
+        }
+
+        public <R> CompletableFuture<List<R>> findListFuture(SQLRowMapper<R> mapper) {
+            return database.supplyAsync(getTableName(), priority, () -> findList(mapper));
+        }
+
+        /**
+         * Find the matching rows as records.  Each record component
+         * names a column, by field or column name, with a compatible
+         * type.  Only those columns are selected, so a record of two
+         * components reads two columns however wide the table is.
+         * The mapping is computed once per record type.
+         */
+        public <R extends Record> List<R> project(Class<R> type) {
+            final Projection projection = getProjection(type);
+            final SQLRowMapper<R> mapper = values -> {
+                try {
+                    return type.cast(projection.ctor().newInstance(values));
+                } catch (InstantiationException | IllegalAccessException | InvocationTargetException
+                         | IllegalArgumentException e) {
+                    throw new PersistenceException("Projecting " + type.getName(), e);
+                }
+            };
+            columnList = projection.columns();
+            return database.withReadConnection(SQLTable.this, primary, connection -> findMapped(connection, projection.columns(), mapper));
+        }
+
+        public <R extends Record> void projectAsync(Class<R> type, Consumer<List<R>> callback) {
+            database.supplyAsync(getTableName(), priority, () -> project(type), callback);
+        }
+
+        public <R extends Record> CompletableFuture<List<R>> projectFuture(Class<R> type) {
+            return database.supplyAsync(getTableName(), priority, () -> project(type));
+        }
+
+        private <R> List<R> findMapped(Connection connection, List<SQLColumn> resultColumns, SQLRowMapper<R> mapper) {
+            final Object[] row = new Object[resultColumns.size()];
+            List<R> list = new ArrayList<>();
+            for (Where where : getWheres(canSplit())) {
+                try (SQLStatementCache.Lease lease = getSelectStatement(connection, where)) {
+                    PreparedStatement statement = lease.getStatement();
+                    database.debugLog(statement);
+                    ResultSet result = statement.executeQuery();
+                    while (result.next()) {
+                        for (int i = 0; i < row.length; i += 1) {
+                            row[i] = resultColumns.get(i).getObject(connection, result);
+                        }
+                        list.add(mapper.map(row));
+                    }
+                } catch (SQLException sqle) {
+                    throw new PersistenceException(sqle);
+                }
+                if (limit > 0 && list.size() >= limit) {
+                    return list.size() > limit ? new ArrayList<>(list.subList(0, limit)) : list;
                 }
-            } catch (SQLException sqle) {
-                throw new IllegalStateException(sqle);
             }
             return list;
         }
 
-        public <E> void findValuesAsync(String columnName, Class<E> ofType, Consumer<List<E>> callback) {
-            database.scheduleAsyncTask(() -> {
-                    List<E> result = findValues(columnName, ofType);
-                    Bukkit.getScheduler().runTask(database.getPlugin(), () -> callback.accept(result));
+        // --- Finder: primitive values
+
+        /**
+         * Read the value or values of the current row into a target.
+         */
+        @FunctionalInterface
+        private interface ColumnReader<T> {
+            void read(T target, ResultSet result) throws SQLException;
+        }
+
+        private static final ColumnReader<IntConsumer> INT_READER = (target, result) -> target.accept(result.getInt(1));
+        private static final ColumnReader<LongConsumer> LONG_READER = (target, result) -> target.accept(result.getLong(1));
+        private static final ColumnReader<DoubleConsumer> DOUBLE_READER = (target, result) -> target.accept(result.getDouble(1));
+
+        /**
+         * Select only the given column, which must be of one of the
+         * types, and skip rows where it is null.
+         */
+        private void selectPrimitive(String columnName, SQLType... types) {
+            SQLColumn column = getColumn(columnName);
+            if (!List.of(types).contains(column.getType())) {
+                throw new IllegalStateException("Column " + column.getColumnName() + " is " + column.getType()
+                                                 + ", required " + Arrays.toString(types));
+            }
+            columnList = List.of(column);
+            prepareAndTerm();
+            isNotNull(columnName);
+        }
+
+        /**
+         * Read every selected row into the target, up to the limit.
+         * @return the target
+         */
+        private <T> T findPrimitives(T target, ColumnReader<? super T> reader) {
+            return database.withReadConnection(SQLTable.this, primary, connection -> {
+                    int count = 0;
+                    for (Where where : getWheres(canSplit())) {
+                        try (SQLStatementCache.Lease lease = getSelectStatement(connection, where)) {
+                            PreparedStatement statement = lease.getStatement();
+                            database.debugLog(statement);
+                            ResultSet result = statement.executeQuery();
+                            while ((limit <= 0 || count < limit) && result.next()) {
+                                reader.read(target, result);
+                                count += 1;
+                            }
+                        } catch (SQLException sqle) {
+                            throw new PersistenceException(sqle);
+                        }
+                    }
+                    return target;
                 });
         }
 
+        /**
+         * Find the values of an int column, or the ids of a reference
+         * column, without boxing them.  Nulls are skipped.
+         */
+        public int[] findInts(String columnName) {
+            selectPrimitive(columnName, SQLType.INT, SQLType.REFERENCE);
+            return findPrimitives(IntStream.builder(), INT_READER).build().toArray();
+        }
+
+        /**
+         * Find the values of an int or long column without boxing
+         * them.  Nulls are skipped.
+         */
+        public long[] findLongs(String columnName) {
+            selectPrimitive(columnName, SQLType.INT, SQLType.LONG, SQLType.REFERENCE);
+            return findPrimitives(LongStream.builder(), LONG_READER).build().toArray();
+        }
+
+        /**
+         * Find the values of a numeric column as doubles without
+         * boxing them.  Nulls are skipped.
+         */
+        public double[] findDoubles(String columnName) {
+            selectPrimitive(columnName, SQLType.INT, SQLType.LONG, SQLType.FLOAT, SQLType.DOUBLE);
+            return findPrimitives(DoubleStream.builder(), DOUBLE_READER).build().toArray();
+        }
+
+        public void findIntsAsync(String columnName, Consumer<int[]> callback) {
+            database.supplyAsync(getTableName(), priority, () -> findInts(columnName), callback);
+        }
+
+        public void findLongsAsync(String columnName, Consumer<long[]> callback) {
+            database.supplyAsync(getTableName(), priority, () -> findLongs(columnName), callback);
+        }
+
+        public void findDoublesAsync(String columnName, Consumer<double[]> callback) {
+            database.supplyAsync(getTableName(), priority, () -> findDoubles(columnName), callback);
+        }
+
+        /**
+         * Find an int key column mapped to an int or long value
+         * column, for example ids to scores, without boxing.  Rows
+         * where either is null are skipped.  Of duplicate keys, the
+         * last one read wins.
+         */
+        public SQLIntLongMap findIntToLongMap(String keyColumnName, String valueColumnName) {
+            selectPrimitive(valueColumnName, SQLType.INT, SQLType.LONG);
+            final SQLColumn valueColumn = columnList.get(0);
+            selectPrimitive(keyColumnName, SQLType.INT, SQLType.REFERENCE);
+            columnList = List.of(columnList.get(0), valueColumn);
+            return findPrimitives(new SQLIntLongMap(), (map, result) -> map.put(result.getInt(1), result.getLong(2)));
+        }
+
+        public void findIntToLongMapAsync(String keyColumnName, String valueColumnName, Consumer<SQLIntLongMap> callback) {
+            database.supplyAsync(getTableName(), priority, () -> findIntToLongMap(keyColumnName, valueColumnName), callback);
+        }
+
+        /**
+         * Stream the values of an int or reference column like
+         * findInts(), but in streaming mode on a connection of its
+         * own, see stream().  Always close the stream.
+         */
+        public IntStream streamInts(String columnName) {
+            selectPrimitive(columnName, SQLType.INT, SQLType.REFERENCE);
+            final StreamingResult streaming = openStream();
+            Spliterator.OfInt spliterator = new Spliterators.AbstractIntSpliterator(Long.MAX_VALUE, Spliterator.ORDERED) {
+                    @Override
+                    public boolean tryAdvance(IntConsumer action) {
+                        return streaming.next(action, INT_READER);
+                    }
+                };
+            return StreamSupport.intStream(spliterator, false).onClose(streaming::close);
+        }
+
+        /**
+         * Stream the values of an int or long column, see
+         * streamInts().
+         */
+        public LongStream streamLongs(String columnName) {
+            selectPrimitive(columnName, SQLType.INT, SQLType.LONG, SQLType.REFERENCE);
+            final StreamingResult streaming = openStream();
+            Spliterator.OfLong spliterator = new Spliterators.AbstractLongSpliterator(Long.MAX_VALUE, Spliterator.ORDERED) {
+                    @Override
+                    public boolean tryAdvance(LongConsumer action) {
+                        return streaming.next(action, LONG_READER);
+                    }
+                };
+            return StreamSupport.longStream(spliterator, false).onClose(streaming::close);
+        }
+
+        /**
+         * Stream the values of a numeric column as doubles, see
+         * streamInts().
+         */
+        public DoubleStream streamDoubles(String columnName) {
+            selectPrimitive(columnName, SQLType.INT, SQLType.LONG, SQLType.FLOAT, SQLType.DOUBLE);
+            final StreamingResult streaming = openStream();
+            Spliterator.OfDouble spliterator = new Spliterators.AbstractDoubleSpliterator(Long.MAX_VALUE, Spliterator.ORDERED) {
+                    @Override
+                    public boolean tryAdvance(DoubleConsumer action) {
+                        return streaming.next(action, DOUBLE_READER);
+                    }
+                };
+            return StreamSupport.doubleStream(spliterator, false).onClose(streaming::close);
+        }
+
         private int delete(Connection connection) {
-            try (PreparedStatement statement = getDeleteStatement(connection)) {
+            database.markWritten(SQLTable.this);
+            int result = 0;
+            for (Where where : getWheres(order.isEmpty() && limit <= 0)) {
+                try (SQLStatementCache.Lease lease = getDeleteStatement(connection, where)) {
+                    PreparedStatement statement = lease.getStatement();
+                    database.debugLog(statement);
+                    result += statement.executeUpdate();
+                } catch (SQLException sqle) {
+                    throw new PersistenceException(sqle);
+                }
+            }
+            return result;
+        }
+
+        public int delete() {
+            return database.withConnection(this::delete);
+        }
+
+        public void deleteAsync(Consumer<Integer> callback) {
+            database.supplyAsync(getTableName(), priority, () -> database.withConnection(this::delete), callback);
+        }
+
+        public CompletableFuture<Integer> deleteFuture() {
+            return database.supplyAsync(getTableName(), priority, () -> database.withConnection(this::delete));
+        }
+
+        private int deleteChunk(Connection connection, int chunkLimit) {
+            database.markWritten(SQLTable.this);
+            try (SQLStatementCache.Lease lease = getDeleteStatement(connection, chunkLimit)) {
+                PreparedStatement statement = lease.getStatement();
                 database.debugLog(statement);
                 return statement.executeUpdate();
             } catch (SQLException sqle) {
@@ -769,85 +1859,425 @@ public final class SQLTable<E extends SQLRow> {
             }
         }
 
-        public int delete() {
-            return delete(database.getConnection());
+        /**
+         * Delete the matching rows in chunks of at most chunkSize
+         * rows, each chunk in its own statement, and pause in
+         * between.  Every chunk holds its row locks only briefly, so
+         * purging a busy table does not stall other writers.
+         *
+         * This blocks the calling thread, pauses included, until the
+         * purge is done.  It refuses to pause on the primary thread.
+         * On an async task, it holds the ordering key of the table
+         * throughout.  Prefer deleteInChunksAsync().
+         * @param chunkSize the maximum number of rows per chunk
+         * @param pause the milliseconds to wait between chunks
+         * @return the total number of deleted rows
+         */
+        public int deleteInChunks(int chunkSize, long pause) {
+            if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize=" + chunkSize);
+            if (pause > 0L && Bukkit.isPrimaryThread()) {
+                throw new IllegalStateException("Cannot pause on the primary thread, use deleteInChunksAsync()");
+            }
+            int total = 0;
+            while (true) {
+                int count = database.withConnection(connection -> deleteChunk(connection, chunkSize));
+                total += count;
+                if (count < chunkSize) return total;
+                if (pause > 0L) {
+                    try {
+                        Thread.sleep(pause);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return total;
+                    }
+                }
+            }
         }
 
-        public void deleteAsync(Consumer<Integer> callback) {
-            database.scheduleAsyncTask(() -> {
-                    int result = delete(database.getAsyncConnection());
-                    if (callback != null) Bukkit.getScheduler().runTask(database.getPlugin(), () -> callback.accept(result));
+        /**
+         * Delete in chunks, see deleteInChunks(), with every chunk a
+         * task of its own.  The next chunk is queued once the pause
+         * after the previous one is over, so nothing waits meanwhile
+         * and other tasks of the table run in between.  The callback
+         * receives the total on the primary thread.
+         */
+        public void deleteInChunksAsync(int chunkSize, long pause, Consumer<Integer> callback) {
+            deleteInChunksFuture(chunkSize, pause).whenComplete((total, error) -> {
+                    if (error != null) {
+                        database.getPlugin().getLogger().log(Level.SEVERE, "[SQL] Deleting in chunks from " + tableName, error);
+                    } else if (callback != null) {
+                        database.getMainThreadExecutor().execute(() -> callback.accept(total));
+                    }
                 });
         }
 
+        public CompletableFuture<Integer> deleteInChunksFuture(int chunkSize, long pause) {
+            if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize=" + chunkSize);
+            final CompletableFuture<Integer> result = new CompletableFuture<>();
+            copy().deleteNextChunk(chunkSize, pause, 0, result);
+            return result;
+        }
+
+        private void deleteNextChunk(int chunkSize, long pause, int total, CompletableFuture<Integer> result) {
+            database.supplyAsync(getTableName(), priority, () -> database.withConnection(connection -> deleteChunk(connection, chunkSize)))
+                .whenComplete((count, error) -> {
+                        if (error != null) {
+                            result.completeExceptionally(error);
+                            return;
+                        }
+                        final int newTotal = total + count;
+                        if (count < chunkSize) {
+                            result.complete(newTotal);
+                        } else if (pause > 0L) {
+                            CompletableFuture.delayedExecutor(pause, TimeUnit.MILLISECONDS)
+                                .execute(() -> deleteNextChunk(chunkSize, pause, newTotal, result));
+                        } else {
+                            deleteNextChunk(chunkSize, pause, newTotal, result);
+                        }
+                    });
+        }
+
         private int findRowCount(Connection connection) {
-            List<E> list = new ArrayList<>();
-            try (PreparedStatement statement = getRowCountStatement(connection)) {
-                database.debugLog(statement);
-                ResultSet result = statement.executeQuery();
-                result.next();
-                return result.getInt("row_count");
-            } catch (SQLException sqle) {
-                throw new PersistenceException(sqle);
+            int count = 0;
+            for (Where where : getWheres(true)) {
+                try (SQLStatementCache.Lease lease = getRowCountStatement(connection, where)) {
+                    PreparedStatement statement = lease.getStatement();
+                    database.debugLog(statement);
+                    ResultSet result = statement.executeQuery();
+                    result.next();
+                    count += result.getInt("row_count");
+                } catch (SQLException sqle) {
+                    throw new PersistenceException(sqle);
+                }
             }
+            return count;
         }
 
         public int findRowCount() {
-            return findRowCount(database.getConnection());
+            return database.withReadConnection(SQLTable.this, primary, this::findRowCount);
         }
 
         public void findRowCountAsync(Consumer<Integer> callback) {
-            database.scheduleAsyncTask(() -> {
-                    int result = findRowCount(database.getAsyncConnection());
-                    Bukkit.getScheduler().runTask(database.getPlugin(), () -> callback.accept(result));
-                });
+            database.supplyAsync(getTableName(), priority, () -> database.withReadConnection(SQLTable.this, primary, this::findRowCount), callback);
+        }
+
+        public CompletableFuture<Integer> findRowCountFuture() {
+            return database.supplyAsync(getTableName(), priority, () -> database.withReadConnection(SQLTable.this, primary, this::findRowCount));
         }
 
         // --- Finder: create statements
 
-        protected PreparedStatement getSelectStatement(Connection connection) throws SQLException {
-            if (!order.isEmpty()) {
-                sb.append(" ORDER BY ").append(order.get(0));
-                for (int i = 1; i < order.size(); ++i) {
-                    sb.append(", ").append(order.get(i));
-                }
+        /**
+         * Results can be merged from several queries unless they have
+         * an order or an offset.
+         */
+        private boolean canSplit() {
+            return order.isEmpty() && offset < 0;
+        }
+
+        /**
+         * Get the WHERE clauses to query.  This is one clause, unless
+         * there is a long IN list and splitting is allowed, in which
+         * case there is one clause per chunk of the list.  A list
+         * within parentheses or next to a top level OR is never
+         * split, because then several chunks could match the same
+         * row.  This leaves the builder as it is, so
+         * the statements can be created again if a query has to be
+         * retried.
+         */
+        List<Where> getWheres(boolean split) {
+            if (splitIn == null) return List.of(new Where(sb.toString(), values));
+            final List<Object> items = splitIn.items();
+            final int chunkSize = split && !topLevelOr
+                ? Math.max(1, database.getConfig().getInListChunkSize())
+                : items.size();
+            List<Where> result = new ArrayList<>();
+            for (int start = 0; start < items.size(); start += chunkSize) {
+                List<Object> chunk = items.subList(start, Math.min(items.size(), start + chunkSize));
+                StringBuilder clause = new StringBuilder(sb.length() + 3 * chunk.size() + 2);
+                List<Object> clauseValues = new ArrayList<>(values.size() + 2 * chunk.size());
+                clause.append(sb, 0, splitIn.sbIndex());
+                clauseValues.addAll(values.subList(0, splitIn.valueIndex()));
+                appendInList(clause, clauseValues, chunk);
+                clause.append(sb, splitIn.sbIndex(), sb.length());
+                clauseValues.addAll(values.subList(splitIn.valueIndex(), values.size()));
+                result.add(new Where(clause.toString(), clauseValues));
+            }
+            return result;
+        }
+
+        Where getWhere() {
+            return getWheres(false).get(0);
+        }
+
+        /**
+         * Prepare a statement, possibly from the cache, and bind the
+         * values.
+         */
+        private SQLStatementCache.Lease prepare(Connection connection, String sql, List<Object> boundValues) throws SQLException {
+            SQLStatementCache.Lease lease = SQLStatementCache.prepare(connection, sql);
+            try {
+                SQLUtil.formatStatement(lease.getStatement(), boundValues);
+            } catch (SQLException sqle) {
+                lease.close();
+                throw sqle;
+            }
+            return lease;
+        }
+
+        private String getOrderBy() {
+            if (order.isEmpty()) return "";
+            return " ORDER BY " + String.join(", ", order);
+        }
+
+        private String getLimit() {
+            if (limit <= 0) return "";
+            return offset > -1
+                ? " LIMIT " + limit + " OFFSET " + offset
+                : " LIMIT " + limit;
+        }
+
+        private String getColumnNameList() {
+            if (columnList == null) return "*";
+            List<String> columnNames = new ArrayList<>(columnList.size());
+            for (SQLColumn col : columnList) {
+                columnNames.add("`" + col.getColumnName() + "`");
             }
+            return String.join(", ", columnNames);
+        }
+
+        /**
+         * Create the select statement.
+         */
+        protected SQLStatementCache.Lease getSelectStatement(Connection connection) throws SQLException {
+            return getSelectStatement(connection, getWhere());
+        }
+
+        private SQLStatementCache.Lease getSelectStatement(Connection connection, Where where) throws SQLException {
+            return prepare(connection, getSelectSql(where), where.values());
+        }
+
+        private String getSelectSql(Where where) {
+            return "SELECT " + getColumnNameList() + " FROM `" + getTableName() + "`"
+                + where.clause() + getOrderBy() + getLimit();
+        }
+
+        protected SQLStatementCache.Lease getDeleteStatement(Connection connection) throws SQLException {
+            return getDeleteStatement(connection, getWhere());
+        }
+
+        private SQLStatementCache.Lease getDeleteStatement(Connection connection, Where where) throws SQLException {
+            StringBuilder tail = new StringBuilder(where.clause());
             if (limit > 0) {
-                sb.append(" LIMIT " + limit);
-                if (offset > -1) sb.append(" OFFSET " + offset);
+                tail.append(" LIMIT " + limit);
+                if (offset > -1) tail.append(" OFFSET " + offset);
             }
-            final String columnNameList;
-            if (columnList == null) {
-                columnNameList = "*";
-            } else {
-                List<String> columnNames = new ArrayList<>(columnList.size());
-                for (SQLColumn col : columnList) {
-                    columnNames.add("`" + col.getColumnName() + "`");
+            String sql = "DELETE FROM `" + getTableName() + "`" + tail.toString();
+            return prepare(connection, sql, where.values());
+        }
+
+        /**
+         * Create a delete statement for one batch of
+         * deleteInChunks().  The order, if any, decides which rows
+         * go first.
+         */
+        protected SQLStatementCache.Lease getDeleteStatement(Connection connection, int chunkLimit) throws SQLException {
+            final Where where = getWhere();
+            String sql = "DELETE FROM `" + getTableName() + "`" + where.clause() + getOrderBy() + " LIMIT " + chunkLimit;
+            return prepare(connection, sql, where.values());
+        }
+
+        protected SQLStatementCache.Lease getRowCountStatement(Connection connection) throws SQLException {
+            return getRowCountStatement(connection, getWhere());
+        }
+
+        private SQLStatementCache.Lease getRowCountStatement(Connection connection, Where where) throws SQLException {
+            String sql = "SELECT count(*) row_count FROM `" + getTableName() + "`" + where.clause();
+            return prepare(connection, sql, where.values());
+        }
+    }
+
+    /**
+     * A compiled finder, see Finder#compile().  It is immutable, so
+     * hot lookups can be compiled once and shared.  Each execution
+     * binds the SQLParameter placeholders: positional ones from the
+     * argument list, named ones from a map.  SQLRow arguments are
+     * bound as their id.
+     */
+    public final class Query {
+        private final String selectSql;
+        private final String uniqueSql;
+        private final String countSql;
+        private final List<Object> values;
+        private final List<SQLColumn> columnList;
+        private final SQLPriority priority;
+        private final boolean primary;
+
+        private Query(final String selectSql, final String uniqueSql, final String countSql, final List<Object> values,
+                      final List<SQLColumn> columnList, final SQLPriority priority, final boolean primary) {
+            this.selectSql = selectSql;
+            this.uniqueSql = uniqueSql;
+            this.countSql = countSql;
+            this.values = Collections.unmodifiableList(new ArrayList<>(values));
+            this.columnList = columnList != null ? List.copyOf(columnList) : columns;
+            this.priority = priority;
+            this.primary = primary;
+        }
+
+        private List<Object> bind(Object[] args) {
+            List<Object> result = new ArrayList<>(values.size());
+            for (Object value : values) {
+                if (value instanceof SQLParameter parameter) {
+                    if (parameter.isNamed()) {
+                        throw new IllegalArgumentException("Named parameter needs a map: " + parameter);
+                    }
+                    if (parameter.getIndex() >= args.length) {
+                        throw new IllegalArgumentException("Missing parameter: " + parameter);
+                    }
+                    result.add(bindValue(args[parameter.getIndex()]));
+                } else {
+                    result.add(value);
                 }
-                columnNameList = String.join(", ", columnNames);
             }
-            String sql = "SELECT " + columnNameList + " FROM `" + getTableName() + "`" + sb.toString();
-            PreparedStatement statement = connection.prepareStatement(sql);
-            SQLUtil.formatStatement(statement, values);
-            return statement;
+            return result;
         }
 
-        protected PreparedStatement getDeleteStatement(Connection connection) throws SQLException {
-            if (limit > 0) {
-                sb.append(" LIMIT " + limit);
-                if (offset > -1) sb.append(" OFFSET " + offset);
+        private List<Object> bind(Map<String, ?> args) {
+            List<Object> result = new ArrayList<>(values.size());
+            for (Object value : values) {
+                if (value instanceof SQLParameter parameter) {
+                    if (!parameter.isNamed()) {
+                        throw new IllegalArgumentException("Positional parameter needs an argument list: " + parameter);
+                    }
+                    if (!args.containsKey(parameter.getName())) {
+                        throw new IllegalArgumentException("Missing parameter: " + parameter);
+                    }
+                    result.add(bindValue(args.get(parameter.getName())));
+                } else {
+                    result.add(value);
+                }
             }
-            String sql = "DELETE FROM `" + getTableName() + "`" + sb.toString();
-            PreparedStatement statement = connection.prepareStatement(sql);
-            SQLUtil.formatStatement(statement, values);
-            return statement;
+            return result;
         }
 
-        protected PreparedStatement getRowCountStatement(Connection connection) throws SQLException {
-            String sql = "SELECT count(*) row_count FROM `" + getTableName() + "`" + sb.toString();
-            PreparedStatement statement = connection.prepareStatement(sql);
-            SQLUtil.formatStatement(statement, values);
-            return statement;
+        private Object bindValue(Object arg) {
+            if (arg instanceof SQLRow row) {
+                SQLTable<?> refTable = database.findTable(row.getClass());
+                if (refTable.idColumn == null) {
+                    throw new IllegalArgumentException("Cannot bind row without id column: " + row.getClass().getName());
+                }
+                return refTable.idColumn.getValue(row);
+            }
+            return arg;
+        }
+
+        private List<E> findList(Connection connection, String sql, List<Object> bound) {
+            List<E> list = new ArrayList<>();
+            try (SQLStatementCache.Lease lease = SQLStatementCache.prepare(connection, sql)) {
+                PreparedStatement statement = lease.getStatement();
+                SQLUtil.formatStatement(statement, bound);
+                database.debugLog(statement);
+                ResultSet result = statement.executeQuery();
+                while (result.next()) {
+                    list.add(createInstance(connection, result, columnList));
+                }
+            } catch (SQLException sqle) {
+                throw new PersistenceException(sqle);
+            }
+            return list;
+        }
+
+        private List<E> findList(List<Object> bound) {
+            return database.withReadConnection(SQLTable.this, primary, connection -> findList(connection, selectSql, bound));
+        }
+
+        private E findUnique(List<Object> bound) {
+            List<E> list = database.withReadConnection(SQLTable.this, primary, connection -> findList(connection, uniqueSql, bound));
+            return list.isEmpty() ? null : list.get(0);
+        }
+
+        private int findRowCount(List<Object> bound) {
+            return database.withReadConnection(SQLTable.this, primary, connection -> {
+                    try (SQLStatementCache.Lease lease = SQLStatementCache.prepare(connection, countSql)) {
+                        PreparedStatement statement = lease.getStatement();
+                        SQLUtil.formatStatement(statement, bound);
+                        database.debugLog(statement);
+                        ResultSet result = statement.executeQuery();
+                        result.next();
+                        return result.getInt("row_count");
+                    } catch (SQLException sqle) {
+                        throw new PersistenceException(sqle);
+                    }
+                });
+        }
+
+        public List<E> findList(Object... args) {
+            return findList(bind(args));
+        }
+
+        public List<E> findList(Map<String, ?> args) {
+            return findList(bind(args));
+        }
+
+        public void findListAsync(Consumer<List<E>> callback, Object... args) {
+            final List<Object> bound = bind(args);
+            database.supplyAsync(getTableName(), priority, () -> findList(bound), callback);
+        }
+
+        public CompletableFuture<List<E>> findListFuture(Object... args) {
+            final List<Object> bound = bind(args);
+            return database.supplyAsync(getTableName(), priority, () -> findList(bound));
+        }
+
+        public CompletableFuture<List<E>> findListFuture(Map<String, ?> args) {
+            final List<Object> bound = bind(args);
+            return database.supplyAsync(getTableName(), priority, () -> findList(bound));
+        }
+
+        public E findUnique(Object... args) {
+            return findUnique(bind(args));
+        }
+
+        public E findUnique(Map<String, ?> args) {
+            return findUnique(bind(args));
+        }
+
+        public void findUniqueAsync(Consumer<E> callback, Object... args) {
+            final List<Object> bound = bind(args);
+            database.supplyAsync(getTableName(), priority, () -> findUnique(bound), callback);
+        }
+
+        public CompletableFuture<E> findUniqueFuture(Object... args) {
+            final List<Object> bound = bind(args);
+            return database.supplyAsync(getTableName(), priority, () -> findUnique(bound));
+        }
+
+        public CompletableFuture<E> findUniqueFuture(Map<String, ?> args) {
+            final List<Object> bound = bind(args);
+            return database.supplyAsync(getTableName(), priority, () -> findUnique(bound));
+        }
+
+        public int findRowCount(Object... args) {
+            return findRowCount(bind(args));
+        }
+
+        public int findRowCount(Map<String, ?> args) {
+            return findRowCount(bind(args));
+        }
+
+        public void findRowCountAsync(Consumer<Integer> callback, Object... args) {
+            final List<Object> bound = bind(args);
+            database.supplyAsync(getTableName(), priority, () -> findRowCount(bound), callback);
+        }
+
+        public CompletableFuture<Integer> findRowCountFuture(Object... args) {
+            final List<Object> bound = bind(args);
+            return database.supplyAsync(getTableName(), priority, () -> findRowCount(bound));
+        }
+
+        @Override
+        public String toString() {
+            return selectSql + " " + values;
         }
     }
 
@@ -866,6 +2296,7 @@ public final class SQLTable<E extends SQLRow> {
                ? " FIRST"
                : " AFTER `" + columns.get(columnIndex - 1).getColumnName() + "`");
         database.getPlugin().getLogger().info("[" + tableName + "] Creating missing column " + column.getColumnName() + ": " + update);
+        database.markWritten(this);
         try (Statement statement = database.getConnection().createStatement()) {
             final int result = statement.executeUpdate(update);
             database.getPlugin().getLogger().info("[" + tableName + "] Creating missing column " + column.getColumnName() + " => " + result);
@@ -0,0 +1,150 @@
+package com.winthier.sql;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * One task in the async queue of a database.  Besides the work
+ * itself, a task knows where its result goes, and whom to tell if it
+ * fails or never runs because it was rejected or dropped.
+ *
+ * A task with a coalesce key may absorb later tasks with an equal
+ * key.  The absorbed tasks then receive the result of this one.
+ *
+ * A task which saves a single row may describe that save, so that a
+ * run of compatible saves can be merged into one statement.
+ */
+final class SQLTask<T> implements Runnable {
+    final Object key;
+    final SQLPriority priority;
+    final Object coalesceKey;
+    private final Supplier<T> supplier;
+    private Consumer<T> onResult;
+    private Consumer<Throwable> onError;
+    private boolean done;
+    private Save save;
+    private SQLRow row;
+
+    /**
+     * The shape of a single row save.  Saves of the same shape can
+     * share one statement.
+     */
+    record Save(SQLTable<?> table, boolean doIgnore, boolean doUpdate, Set<String> fields) { }
+
+    /**
+     * @param key the ordering key, or null
+     * @param priority the priority class
+     * @param coalesceKey the coalesce key, or null
+     * @param supplier the work
+     * @param onResult receives the result, or null
+     * @param onError receives any failure, including rejection
+     */
+    SQLTask(final Object key, final SQLPriority priority, final Object coalesceKey,
+            final Supplier<T> supplier, final Consumer<T> onResult, final Consumer<Throwable> onError) {
+        this.key = key;
+        this.priority = priority != null ? priority : SQLPriority.INTERACTIVE;
+        this.coalesceKey = coalesceKey;
+        this.supplier = supplier;
+        this.onResult = onResult;
+        this.onError = onError;
+    }
+
+    @Override
+    public void run() {
+        final T result;
+        try {
+            result = supplier.get();
+        } catch (Throwable t) {
+            finish(null, t);
+            return;
+        }
+        finish(result, null);
+    }
+
+    /**
+     * Describe this task as the save of one row.
+     */
+    void setSave(Save theSave, SQLRow theRow) {
+        this.save = theSave;
+        this.row = theRow;
+    }
+
+    Save getSave() {
+        return save;
+    }
+
+    SQLRow getRow() {
+        return row;
+    }
+
+    /**
+     * Whether a task may join a batch of saves, to be written with
+     * the same statement.  Each row may appear only once.
+     */
+    static boolean canJoin(List<SQLTask<?>> batch, SQLTask<?> other) {
+        final Save first = batch.get(0).save;
+        if (first == null || !first.equals(other.save)) return false;
+        for (SQLTask<?> task : batch) {
+            if (task.row == other.row) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Deliver a result without running, because the work was done
+     * elsewhere, such as in a merged statement.
+     */
+    public void complete(T result) {
+        finish(result, null);
+    }
+
+    /**
+     * Report that this task will never run.  Does nothing if it
+     * already has.
+     */
+    public void abandon(Throwable reason) {
+        finish(null, reason);
+    }
+
+    private void finish(T result, Throwable error) {
+        final Consumer<T> resultConsumer;
+        final Consumer<Throwable> errorConsumer;
+        synchronized (this) {
+            if (done) return;
+            done = true;
+            resultConsumer = onResult;
+            errorConsumer = onError;
+        }
+        if (error != null) {
+            if (errorConsumer != null) errorConsumer.accept(error);
+        } else if (resultConsumer != null) {
+            resultConsumer.accept(result);
+        }
+    }
+
+    /**
+     * Let the result of this task also complete another task with an
+     * equal coalesce key.  The other task is not run.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void absorb(SQLTask<?> other) {
+        final Consumer<T> otherResult = (Consumer<T>) other.onResult;
+        final Consumer<Throwable> otherError = other.onError;
+        if (otherResult != null) {
+            onResult = onResult != null ? onResult.andThen(otherResult) : otherResult;
+        }
+        if (otherError != null) {
+            onError = onError != null ? onError.andThen(otherError) : otherError;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SQLTask(key=" + key
+            + " priority=" + priority
+            + (row != null ? " row=" + row : "")
+            + ")";
+    }
+}
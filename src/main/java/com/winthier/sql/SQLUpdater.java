@@ -6,11 +6,11 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import javax.persistence.PersistenceException;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
-import org.bukkit.Bukkit;
 
 @RequiredArgsConstructor
 public final class SQLUpdater<E extends SQLRow> {
@@ -20,6 +20,7 @@ public final class SQLUpdater<E extends SQLRow> {
     private List<NewValue> valueList = new ArrayList<>();
     private SQLConditionList conditionList;
     private String sql;
+    private SQLPriority priority;
 
     protected enum Operation {
         SET("="),
@@ -106,14 +107,17 @@ public final class SQLUpdater<E extends SQLRow> {
         sql = "UPDATE `" + table.getTableName() + "`"
             + " SET " + String.join(", ", setters)
             + (conditionList == null || conditionList.isEmpty() ? "" : " WHERE " + conditionList.compile(values));
-        int ret;
-        try (PreparedStatement statement = database.getConnection().prepareStatement(sql)) {
-            SQLUtil.formatStatement(statement, values);
-            database.debugLog(statement);
-            ret = statement.executeUpdate();
-        } catch (SQLException sqle) {
-            throw new PersistenceException(sqle);
-        }
+        database.markWritten(table);
+        int ret = database.withConnection(connection -> {
+                try (SQLStatementCache.Lease lease = SQLStatementCache.prepare(connection, sql)) {
+                    PreparedStatement statement = lease.getStatement();
+                    SQLUtil.formatStatement(statement, values);
+                    database.debugLog(statement);
+                    return statement.executeUpdate();
+                } catch (SQLException sqle) {
+                    throw new PersistenceException(sqle);
+                }
+            });
         if (ret <= 0) return ret;
         if (instance != null) {
             for (NewValue newValue : valueList) {
@@ -140,12 +144,24 @@ public final class SQLUpdater<E extends SQLRow> {
     }
 
     public void async(Consumer<Integer> callback) {
-        database.scheduleAsyncTask(() -> {
-                int res = sync();
-                if (callback != null) {
-                    Bukkit.getScheduler().runTask(database.getPlugin(), () -> callback.accept(res));
-                }
-            });
+        database.supplyAsync(table.getTableName(), getPriority(), this::sync, callback);
+    }
+
+    public CompletableFuture<Integer> future() {
+        return database.supplyAsync(table.getTableName(), getPriority(), this::sync);
+    }
+
+    /**
+     * Set the priority of async() and future().  The default is the
+     * priority of the table.
+     */
+    public SQLUpdater<E> priority(final SQLPriority newPriority) {
+        this.priority = newPriority;
+        return this;
+    }
+
+    private SQLPriority getPriority() {
+        return priority != null ? priority : table.getPriority();
     }
 
     public SQLUpdater<E> row(final E theInstance) {
@@ -3,7 +3,11 @@ package com.winthier.sql;
 import java.sql.Blob;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -60,7 +64,9 @@ public final class SQLUtil {
     public static void formatStatement(PreparedStatement statement, List<Object> values) throws SQLException {
         for (int index = 1; index <= values.size(); index += 1) {
             Object value = values.get(index - 1);
-            if (value instanceof String s) {
+            if (value == null) {
+                statement.setNull(index, Types.NULL);
+            } else if (value instanceof String s) {
                 statement.setString(index, s);
             } else if (value instanceof Date date) {
                 statement.setTimestamp(index, new Timestamp(date.getTime()));
@@ -83,9 +89,42 @@ public final class SQLUtil {
             } else if (value instanceof Blob blob) {
                 statement.setBlob(index, blob);
             } else {
-                String name = value == null ? "null" : value.getClass().getName();
+                String name = value.getClass().getName();
                 throw new IllegalArgumentException("Unexpected type in '" + statement + "': " + name + ", " + values + ", index=" + index);
             }
         }
     }
+
+    /**
+     * Roughly estimate how many bytes a statement value takes up in
+     * a request to the server.  Strings are counted at the worst case
+     * of UTF-8 plus escaping.
+     */
+    public static int estimateSize(Object value) {
+        if (value == null) return 4;
+        if (value instanceof String s) return 3 * s.length() + 2;
+        if (value instanceof byte[] byteArray) return 2 * byteArray.length + 2;
+        if (value instanceof Blob) return 1024;
+        return 20;
+    }
+
+    /**
+     * Determine if a throwable was caused by a broken connection, as
+     * opposed to an error in the statement itself.  SQL states of
+     * class 08 denote connection exceptions.
+     */
+    public static boolean isConnectionError(Throwable throwable) {
+        for (Throwable it = throwable; it != null; it = it.getCause()) {
+            if (it instanceof SQLRecoverableException
+                || it instanceof SQLNonTransientConnectionException
+                || it instanceof SQLTransientConnectionException) {
+                return true;
+            }
+            if (it instanceof SQLException sqle && sqle.getSQLState() != null && sqle.getSQLState().startsWith("08")) {
+                return true;
+            }
+            if (it.getCause() == it) break;
+        }
+        return false;
+    }
 }
@@ -0,0 +1,218 @@
+package com.winthier.sql;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Buffers async saves and updates of write-behind tables, see
+ * SQLRow.WriteBehind.
+ *
+ * Rows are keyed by table plus id, or the values of the first unique
+ * key if there is no id yet, or else by object identity.  A row
+ * object keeps the key of its entry while it is pending, even if it
+ * gets an id meanwhile, so it never has two entries.  Repeated
+ * writes of the same row merge into one dirty entry, which keeps the
+ * latest row object and the union of the columns.  Once per
+ * interval, every dirty entry is handed to the sink, which queues one
+ * write for it.  The write sees the state of the row at the time it
+ * runs, so database writes scale with the number of distinct dirty
+ * rows, not with the number of calls.
+ */
+final class SQLWriteBehind {
+    private final long interval;
+    private final Consumer<Dirty> sink;
+    private final ScheduledExecutorService timer;
+    private Map<Object, Dirty> dirty = new LinkedHashMap<>();
+    /** The key of the entry of every pending row object. */
+    private Map<SQLRow, Object> pendingKeys = new IdentityHashMap<>();
+
+    /**
+     * One dirty row.
+     */
+    static final class Dirty {
+        private SQLRow row;
+        /** True if every merged write was an update of an existing row. */
+        private boolean update;
+        /** The merged columns, or null for all of them. */
+        private Set<String> fields;
+        private Consumer<Integer> onResult;
+        private Consumer<Throwable> onError;
+
+        SQLRow getRow() {
+            return row;
+        }
+
+        boolean isUpdate() {
+            return update;
+        }
+
+        Set<String> getFields() {
+            return fields;
+        }
+
+        Consumer<Integer> getOnResult() {
+            return onResult;
+        }
+
+        Consumer<Throwable> getOnError() {
+            return onError;
+        }
+    }
+
+    private record RowKey(SQLTable<?> table, Object id) { }
+
+    private record Identity(SQLRow row) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Identity that && row == that.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(row);
+        }
+    }
+
+    /**
+     * @param name the name used for the timer thread
+     * @param interval the flush interval in milliseconds
+     * @param sink queues the write of a dirty row
+     */
+    SQLWriteBehind(final String name, final long interval, final Consumer<Dirty> sink) {
+        this.interval = Math.max(1L, interval);
+        this.sink = sink;
+        this.timer = Executors.newSingleThreadScheduledExecutor(run -> {
+                Thread thread = new Thread(run, "SQL-" + name + "-WriteBehind");
+                thread.setDaemon(true);
+                return thread;
+            });
+        timer.scheduleWithFixedDelay(this::flush, this.interval, this.interval, TimeUnit.MILLISECONDS);
+    }
+
+    private static Object keyOf(SQLTable<?> table, SQLRow row) {
+        SQLColumn idColumn = table.getIdColumn();
+        if (idColumn != null) {
+            Object id = idColumn.getValue(row);
+            if (id != null) return new RowKey(table, id);
+        }
+        for (SQLTable.Key key : table.getKeys().values()) {
+            if (!key.isUnique()) continue;
+            List<Object> values = new ArrayList<>(key.getColumns().size());
+            for (SQLColumn column : key.getColumns()) {
+                Object value = column.getValue(row);
+                if (value == null) break;
+                values.add(value);
+            }
+            if (values.size() == key.getColumns().size()) {
+                return new RowKey(table, values);
+            }
+            break;
+        }
+        return new RowKey(table, new Identity(row));
+    }
+
+    /**
+     * Mark a row dirty.
+     * @param update true for an update of an existing row, false for
+     * a save which may insert
+     * @param fields the columns to write, or null or empty for all
+     * @param onResult receives the result of the eventual write, or
+     * null
+     * @param onError receives any failure, or null
+     */
+    public synchronized void add(SQLTable<?> table, SQLRow row, boolean update, Set<String> fields,
+                                 Consumer<Integer> onResult, Consumer<Throwable> onError) {
+        Object key = pendingKeys.get(row);
+        if (key == null) {
+            key = keyOf(table, row);
+            pendingKeys.put(row, key);
+        }
+        Dirty entry = dirty.get(key);
+        if (entry == null) {
+            entry = new Dirty();
+            entry.update = update;
+            entry.fields = fields == null || fields.isEmpty() ? null : new HashSet<>(fields);
+            dirty.put(key, entry);
+        } else {
+            // A save includes any update.  All columns include any
+            // columns.
+            entry.update = entry.update && update;
+            if (entry.fields != null) {
+                if (fields == null || fields.isEmpty()) {
+                    entry.fields = null;
+                } else {
+                    entry.fields.addAll(fields);
+                }
+            }
+        }
+        entry.row = row;
+        if (onResult != null) {
+            entry.onResult = entry.onResult != null ? entry.onResult.andThen(onResult) : onResult;
+        }
+        if (onError != null) {
+            entry.onError = entry.onError != null ? entry.onError.andThen(onError) : onError;
+        }
+    }
+
+    /**
+     * Forget the pending write of a row, because it is about to be
+     * deleted.  Its callers receive a result of 0.
+     */
+    public void discard(SQLTable<?> table, SQLRow row) {
+        final Dirty entry;
+        synchronized (this) {
+            final Object pendingKey = pendingKeys.get(row);
+            final Object key = pendingKey != null ? pendingKey : keyOf(table, row);
+            entry = dirty.remove(key);
+            if (entry != null) pendingKeys.values().removeIf(key::equals);
+        }
+        if (entry != null && entry.onResult != null) entry.onResult.accept(0);
+    }
+
+    /**
+     * Hand every dirty row to the sink.
+     */
+    public void flush() {
+        drainTo(sink);
+    }
+
+    /**
+     * Hand every dirty row to the given consumer instead of the sink.
+     */
+    public void drainTo(Consumer<Dirty> consumer) {
+        final Map<Object, Dirty> flushed;
+        synchronized (this) {
+            if (dirty.isEmpty()) return;
+            flushed = dirty;
+            dirty = new LinkedHashMap<>();
+            pendingKeys = new IdentityHashMap<>();
+        }
+        for (Dirty entry : flushed.values()) {
+            try {
+                consumer.accept(entry);
+            } catch (RuntimeException re) {
+                if (entry.onError != null) entry.onError.accept(re);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return dirty.size();
+    }
+
+    /**
+     * Stop the timer.  Call flush() first.
+     */
+    public void close() {
+        timer.shutdownNow();
+    }
+}
@@ -1,6 +1,7 @@
 package com.winthier.sql.condition;
 
 import com.winthier.sql.SQLColumn;
+import com.winthier.sql.SQLParameter;
 import java.util.List;
 
 /**
@@ -28,7 +29,7 @@ public final class SQLComparison implements SQLCondition {
             break;
         case LIKE:
             if (rvalue != null) throw new IllegalArgumentException(comparator + ": rvalue must be null");
-            if (!(value instanceof String)) {
+            if (!(value instanceof String) && !(value instanceof SQLParameter)) {
                 throw new IllegalArgumentException(comparator + ": string required!");
             }
             break;
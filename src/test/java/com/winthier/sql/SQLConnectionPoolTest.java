@@ -0,0 +1,169 @@
+package com.winthier.sql;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Properties;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Check the size limits of the connection pool.  Connections come
+ * from a fake driver which opens nothing.
+ */
+public class SQLConnectionPoolTest {
+    private static final String URL = "jdbc:sqlpooltest:";
+    private Driver driver;
+    private SQLConnectionPool pool;
+
+    private static final class FakeDriver implements Driver {
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) return null;
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    return switch (method.getName()) {
+                    case "isValid", "getAutoCommit" -> true;
+                    case "isClosed" -> false;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                    };
+                });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith(URL);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        driver = new FakeDriver();
+        DriverManager.registerDriver(driver);
+        pool = pool(3);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        pool.close();
+        DriverManager.deregisterDriver(driver);
+    }
+
+    private static SQLConnectionPool pool(int maxSize) {
+        Config config = new Config();
+        config.setPoolMinSize(0);
+        config.setPoolMaxSize(maxSize);
+        config.setPoolConnectionTimeout(10L);
+        return new SQLConnectionPool("test", Logger.getGlobal(), config, URL);
+    }
+
+    private void assertExhausted(boolean pinned) throws SQLException {
+        try {
+            if (pinned) {
+                pool.borrowPinned();
+            } else {
+                pool.borrow();
+            }
+            fail("Pool not exhausted");
+        } catch (SQLTimeoutException ste) {
+            return;
+        }
+    }
+
+    @Test
+    public void capIncludesPinned() throws SQLException {
+        pool.borrowPinned();
+        pool.borrow();
+        pool.borrow();
+        assertEquals(0, pool.getAvailableCount());
+        assertExhausted(false);
+    }
+
+    @Test
+    public void pinsLeaveOneConnection() throws SQLException {
+        pool.borrowPinned();
+        pool.borrowPinned();
+        assertExhausted(true);
+        Connection connection = pool.borrow();
+        assertExhausted(false);
+        pool.release(connection);
+        assertExhausted(true);
+    }
+
+    @Test
+    public void releaseAfterShrinking() throws SQLException {
+        Connection a = pool.borrow();
+        Connection b = pool.borrow();
+        pool.borrow();
+        pool.setMaxSize(2);
+        assertEquals(2, pool.getMaxSize());
+        pool.release(a);
+        assertEquals(0, pool.getIdleCount());
+        assertExhausted(false);
+        pool.release(b);
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void growWakesWaiters() throws SQLException {
+        pool.borrow();
+        pool.borrow();
+        pool.borrow();
+        pool.setMaxSize(4);
+        pool.borrow();
+        assertEquals(4, pool.getLeasedCount());
+    }
+
+    @Test
+    public void neverSmallerThanTwo() {
+        pool.setMaxSize(0);
+        assertEquals(2, pool.getMaxSize());
+    }
+
+    @Test
+    public void compareSettings() {
+        Config config = new Config();
+        config.setPoolMinSize(0);
+        config.setPoolMaxSize(8);
+        config.setPoolConnectionTimeout(10L);
+        assertTrue(pool.hasSettingsOf(config));
+        config.setPoolValidationInterval(1L);
+        assertFalse(pool.hasSettingsOf(config));
+    }
+}
@@ -0,0 +1,198 @@
+package com.winthier.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check the order in which the async queue hands out tasks, and what
+ * happens when it is full.  Tasks are run on the test thread.
+ */
+public class SQLExecutorTest {
+    private final List<String> log = new ArrayList<>();
+    private final List<Throwable> errors = new ArrayList<>();
+
+    private SQLExecutor executor(int depth, SQLOverflowPolicy policy) {
+        Config config = new Config();
+        config.setAsyncQueueDepth(depth);
+        config.setAsyncOverflowPolicy(policy);
+        return new SQLExecutor(config, tasks -> {
+                for (SQLTask<?> task : tasks) task.run();
+            }, null, null);
+    }
+
+    private SQLTask<String> task(Object key, SQLPriority priority, String name) {
+        return new SQLTask<>(key, priority, null, () -> {
+                log.add(name);
+                return name;
+            }, null, errors::add);
+    }
+
+    private static void runAll(SQLExecutor executor) throws InterruptedException {
+        while (executor.runNext(1L)) { }
+    }
+
+    @Test
+    public void sameKeyInOrder() throws InterruptedException {
+        SQLExecutor executor = executor(0, null);
+        executor.submit(task("a", SQLPriority.INTERACTIVE, "a1"), false);
+        executor.submit(task("b", SQLPriority.INTERACTIVE, "b1"), false);
+        executor.submit(task("a", SQLPriority.INTERACTIVE, "a2"), false);
+        executor.submit(task("a", SQLPriority.INTERACTIVE, "a3"), false);
+        runAll(executor);
+        assertEquals(List.of("a1", "b1", "a2", "a3"), log);
+        assertEquals(0, executor.size());
+    }
+
+    @Test
+    public void submissionOrderAcrossKeys() throws InterruptedException {
+        SQLExecutor executor = executor(0, null);
+        executor.submit(task("a", SQLPriority.INTERACTIVE, "a1"), false);
+        executor.submit(task("a", SQLPriority.INTERACTIVE, "a2"), false);
+        executor.submit(task(null, SQLPriority.INTERACTIVE, "raw"), false);
+        executor.submit(task("b", SQLPriority.INTERACTIVE, "b1"), false);
+        runAll(executor);
+        assertEquals(List.of("a1", "a2", "raw", "b1"), log);
+    }
+
+    @Test
+    public void sameKeyNotInParallel() throws InterruptedException {
+        final SQLExecutor executor = executor(0, null);
+        executor.submit(new SQLTask<>("a", SQLPriority.INTERACTIVE, null, () -> {
+                    log.add("a1");
+                    // Another worker may only take the other key meanwhile
+                    try {
+                        while (executor.runNext(1L)) { }
+                    } catch (InterruptedException ie) {
+                        throw new IllegalStateException(ie);
+                    }
+                    log.add("a1 done");
+                    return null;
+                }, null, errors::add), false);
+        executor.submit(task("a", SQLPriority.INTERACTIVE, "a2"), false);
+        executor.submit(task("b", SQLPriority.INTERACTIVE, "b1"), false);
+        runAll(executor);
+        assertEquals(List.of("a1", "b1", "a1 done", "a2"), log);
+    }
+
+    @Test
+    public void backgroundGetsTurn() throws InterruptedException {
+        SQLExecutor executor = executor(0, null);
+        executor.submit(task("bg", SQLPriority.BACKGROUND, "bg"), false);
+        for (int i = 0; i < SQLExecutor.INTERACTIVE_BURST + 2; i += 1) {
+            executor.submit(task("i" + i, SQLPriority.INTERACTIVE, "i" + i), false);
+        }
+        runAll(executor);
+        assertEquals("bg", log.get(SQLExecutor.INTERACTIVE_BURST));
+        assertEquals(SQLExecutor.INTERACTIVE_BURST + 3, log.size());
+    }
+
+    @Test
+    public void interactiveTaskPromotesKey() throws InterruptedException {
+        SQLExecutor executor = executor(0, null);
+        executor.submit(task("t", SQLPriority.BACKGROUND, "bulk"), false);
+        executor.submit(task("t", SQLPriority.INTERACTIVE, "find"), false);
+        executor.submit(task("x", SQLPriority.INTERACTIVE, "other"), false);
+        runAll(executor);
+        assertEquals(List.of("bulk", "find", "other"), log);
+    }
+
+    @Test
+    public void rejectWhenFull() throws InterruptedException {
+        SQLExecutor executor = executor(2, SQLOverflowPolicy.REJECT);
+        assertTrue(executor.submit(task("a", SQLPriority.INTERACTIVE, "a1"), false));
+        assertTrue(executor.submit(task("a", SQLPriority.INTERACTIVE, "a2"), false));
+        assertFalse(executor.submit(task("a", SQLPriority.INTERACTIVE, "a3"), false));
+        assertEquals(1, executor.getRejectedCount());
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0) instanceof RejectedExecutionException);
+        runAll(executor);
+        assertEquals(List.of("a1", "a2"), log);
+    }
+
+    @Test
+    public void blockRejectsWhenCallerMayNotBlock() throws InterruptedException {
+        SQLExecutor executor = executor(1, SQLOverflowPolicy.BLOCK);
+        assertTrue(executor.submit(task("a", SQLPriority.INTERACTIVE, "a1"), false));
+        assertFalse(executor.submit(task("a", SQLPriority.INTERACTIVE, "a2"), false));
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    public void dropOldestBackground() throws InterruptedException {
+        SQLExecutor executor = executor(3, SQLOverflowPolicy.DROP_OLDEST);
+        executor.submit(task("a", SQLPriority.INTERACTIVE, "a1"), false);
+        executor.submit(task("b", SQLPriority.BACKGROUND, "b1"), false);
+        executor.submit(task("c", SQLPriority.BACKGROUND, "c1"), false);
+        assertTrue(executor.submit(task("d", SQLPriority.INTERACTIVE, "d1"), false));
+        assertEquals(1, executor.getDroppedCount());
+        assertEquals(1, errors.size());
+        runAll(executor);
+        assertEquals(List.of("a1", "d1", "c1"), log);
+    }
+
+    @Test
+    public void dropOldestRejectsWithoutBackground() throws InterruptedException {
+        SQLExecutor executor = executor(1, SQLOverflowPolicy.DROP_OLDEST);
+        executor.submit(task("a", SQLPriority.INTERACTIVE, "a1"), false);
+        assertFalse(executor.submit(task("b", SQLPriority.INTERACTIVE, "b1"), false));
+        runAll(executor);
+        assertEquals(List.of("a1"), log);
+    }
+
+    @Test
+    public void coalesceWhenFull() throws InterruptedException {
+        SQLExecutor executor = executor(1, SQLOverflowPolicy.COALESCE);
+        List<String> results = new ArrayList<>();
+        executor.submit(new SQLTask<>("a", SQLPriority.INTERACTIVE, "k", () -> "first", results::add, errors::add), false);
+        assertTrue(executor.submit(new SQLTask<>("a", SQLPriority.INTERACTIVE, "k", () -> "second", results::add, errors::add), false));
+        assertEquals(1, executor.getCoalescedCount());
+        runAll(executor);
+        assertEquals(List.of("first", "first"), results);
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void batchSaves() throws InterruptedException {
+        Config config = new Config();
+        config.setAsyncBatchSize(2);
+        List<Integer> batches = new ArrayList<>();
+        SQLExecutor executor = new SQLExecutor(config, tasks -> batches.add(tasks.size()), null, null);
+        SQLTask.Save save = new SQLTask.Save(null, false, false, Set.of("name"));
+        for (int i = 0; i < 3; i += 1) {
+            SQLTask<Integer> task = new SQLTask<>("a", SQLPriority.INTERACTIVE, null, () -> 1, null, null);
+            task.setSave(save, new SQLLog());
+            executor.submit(task, false);
+        }
+        executor.submit(task("a", SQLPriority.INTERACTIVE, "other"), false);
+        runAll(executor);
+        assertEquals(List.of(2, 1, 1), batches);
+    }
+
+    @Test
+    public void drainInOrder() throws InterruptedException {
+        SQLExecutor executor = executor(0, null);
+        executor.submit(task("a", SQLPriority.BACKGROUND, "a1"), false);
+        executor.submit(task("b", SQLPriority.INTERACTIVE, "b1"), false);
+        executor.submit(task("a", SQLPriority.INTERACTIVE, "a2"), false);
+        for (SQLTask<?> task : executor.drain()) task.run();
+        assertEquals(List.of("a1", "b1", "a2"), log);
+        assertEquals(0, executor.size());
+    }
+
+    @Test
+    public void pausedHandsOutNothing() throws InterruptedException {
+        SQLExecutor executor = executor(0, null);
+        executor.submit(task("a", SQLPriority.INTERACTIVE, "a1"), false);
+        executor.pause();
+        assertFalse(executor.runNext(1L));
+        executor.resume();
+        assertTrue(executor.runNext(1L));
+        assertEquals(List.of("a1"), log);
+    }
+}
@@ -0,0 +1,165 @@
+package com.winthier.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check the SQL generated by finders.  No database is required.
+ */
+public class SQLFinderTest {
+    private SQLTable<SQLLog> table;
+
+    @Before
+    public void setUp() {
+        Config config = new Config();
+        config.setInListChunkSize(4);
+        table = new SQLTable<>(SQLLog.class, new SQLDatabase(null, config));
+    }
+
+    @Test
+    public void splitTopLevelIn() {
+        List<SQLTable.Where> wheres = table.find()
+            .eq("playerName", "foo")
+            .in("id", List.of(1, 2, 3, 4, 5, 6))
+            .getWheres(true);
+        assertEquals(2, wheres.size());
+        assertEquals(" WHERE `player_name` = ? AND `id` IN (?, ?, ?, ?)", wheres.get(0).clause());
+        assertEquals(List.of("foo", 1, 2, 3, 4), wheres.get(0).values());
+        assertEquals(" WHERE `player_name` = ? AND `id` IN (?, ?)", wheres.get(1).clause());
+        assertEquals(List.of("foo", 5, 6), wheres.get(1).values());
+    }
+
+    @Test
+    public void doNotSplitWithOr() {
+        List<SQLTable.Where> wheres = table.find()
+            .eq("playerName", "foo")
+            .or()
+            .in("id", List.of(1, 2, 3, 4, 5, 6))
+            .getWheres(true);
+        assertEquals(1, wheres.size());
+        assertEquals(" WHERE `player_name` = ? OR `id` IN (?, ?, ?, ?, ?, ?, ?, ?)", wheres.get(0).clause());
+        assertEquals(List.of("foo", 1, 2, 3, 4, 5, 6, 6, 6), wheres.get(0).values());
+    }
+
+    @Test
+    public void doNotSplitWithLaterOr() {
+        List<SQLTable.Where> wheres = table.find()
+            .in("id", List.of(1, 2, 3, 4, 5))
+            .or()
+            .eq("playerName", "foo")
+            .getWheres(true);
+        assertEquals(1, wheres.size());
+        assertEquals(" WHERE `id` IN (?, ?, ?, ?, ?, ?, ?, ?) OR `player_name` = ?", wheres.get(0).clause());
+    }
+
+    @Test
+    public void doNotSplitInParentheses() {
+        List<SQLTable.Where> wheres = table.find()
+            .openParen()
+            .in("id", List.of(1, 2, 3, 4, 5))
+            .closeParen()
+            .getWheres(true);
+        assertEquals(1, wheres.size());
+        assertEquals(" WHERE (`id` IN (?, ?, ?, ?, ?, ?, ?, ?))", wheres.get(0).clause());
+        assertEquals(List.of(1, 2, 3, 4, 5, 5, 5, 5), wheres.get(0).values());
+    }
+
+    @Test
+    public void splitNextToParentheses() {
+        List<SQLTable.Where> wheres = table.find()
+            .openParen()
+            .eq("playerName", "foo")
+            .or()
+            .eq("playerName", "bar")
+            .closeParen()
+            .in("id", List.of(1, 2, 3, 4, 5))
+            .getWheres(true);
+        assertEquals(2, wheres.size());
+        assertEquals(" WHERE (`player_name` = ? OR `player_name` = ?) AND `id` IN (?)", wheres.get(1).clause());
+        assertEquals(List.of("foo", "bar", 5), wheres.get(1).values());
+    }
+
+    @Test
+    public void doNotSplitWhenNotAllowed() {
+        List<SQLTable.Where> wheres = table.find()
+            .in("id", List.of(1, 2, 3, 4, 5))
+            .getWheres(false);
+        assertEquals(1, wheres.size());
+        assertEquals(" WHERE `id` IN (?, ?, ?, ?, ?, ?, ?, ?)", wheres.get(0).clause());
+    }
+
+    @Test
+    public void afterUniformOrder() {
+        SQLTable<SQLLog>.Finder finder = table.find()
+            .eq("playerName", "foo")
+            .orderByAscending("time");
+        finder.after(new SQLPage.Cursor(List.of(10, 20)));
+        SQLTable.Where where = finder.getWhere();
+        assertEquals(" WHERE `player_name` = ? AND (`time`, `id`) > (?, ?)", where.clause());
+        assertEquals(List.of("foo", 10, 20), where.values());
+    }
+
+    @Test
+    public void afterMixedOrder() {
+        SQLTable<SQLLog>.Finder finder = table.find()
+            .orderByDescending("time")
+            .orderByAscending("id");
+        finder.after(new SQLPage.Cursor(List.of(10, 20)));
+        SQLTable.Where where = finder.getWhere();
+        assertEquals(" WHERE ((`time` < ?) OR (`time` = ? AND `id` > ?))", where.clause());
+        assertEquals(List.of(10, 10, 20), where.values());
+    }
+
+    @Test
+    public void afterOr() {
+        SQLTable<SQLLog>.Finder finder = table.find()
+            .eq("playerName", "foo")
+            .or()
+            .eq("playerName", "bar")
+            .orderByAscending("id");
+        finder.after(new SQLPage.Cursor(List.of(10)));
+        assertEquals(" WHERE (`player_name` = ? OR `player_name` = ?) AND (`id`) > (?)", finder.getWhere().clause());
+    }
+
+    @Test
+    public void afterOrWithLongIn() {
+        SQLTable<SQLLog>.Finder finder = table.find()
+            .in("id", List.of(1, 2, 3, 4, 5))
+            .or()
+            .eq("playerName", "foo")
+            .orderByAscending("id");
+        finder.after(new SQLPage.Cursor(List.of(3)));
+        List<SQLTable.Where> wheres = finder.getWheres(true);
+        assertEquals(1, wheres.size());
+        assertEquals(" WHERE (`id` IN (?, ?, ?, ?, ?, ?, ?, ?) OR `player_name` = ?) AND (`id`) > (?)", wheres.get(0).clause());
+        assertEquals(List.of(1, 2, 3, 4, 5, 5, 5, 5, "foo", 3), wheres.get(0).values());
+    }
+
+    @Test
+    public void padInList() {
+        assertEquals(" WHERE `id` IN (?)", table.find().in("id", List.of(1)).getWhere().clause());
+        assertEquals(" WHERE `id` IN (?, ?)", table.find().in("id", List.of(1, 2)).getWhere().clause());
+        SQLTable.Where where = table.find().in("id", List.of(1, 2, 3)).getWhere();
+        assertEquals(" WHERE `id` IN (?, ?, ?, ?)", where.clause());
+        assertEquals(List.of(1, 2, 3, 3), where.values());
+        assertEquals(" WHERE `id` IN (?, ?, ?, ?)", table.find().in("id", List.of(1, 2, 3, 4)).getWhere().clause());
+    }
+
+    @Test
+    public void doNotPadBeyondPlaceholderLimit() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 40_000; i += 1) ids.add(i);
+        SQLTable.Where where = table.find().in("id", ids).getWheres(false).get(0);
+        assertEquals(40_000, where.values().size());
+        assertTrue(where.clause().endsWith("?, ?)"));
+    }
+
+    @Test
+    public void emptyInList() {
+        assertEquals(" WHERE `id` != `id`", table.find().in("id", List.of()).getWhere().clause());
+    }
+}
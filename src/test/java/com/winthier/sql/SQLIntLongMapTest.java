@@ -0,0 +1,78 @@
+package com.winthier.sql;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Check the int to long map, including growing and keys which
+ * collide.
+ */
+public class SQLIntLongMapTest {
+    @Test
+    public void putAndGet() {
+        SQLIntLongMap map = new SQLIntLongMap();
+        map.put(1, 10L);
+        map.put(-5, 50L);
+        map.put(0, 0L);
+        assertEquals(3, map.size());
+        assertEquals(10L, map.get(1));
+        assertEquals(50L, map.get(-5));
+        assertTrue(map.containsKey(0));
+        map.put(1, 11L);
+        assertEquals(3, map.size());
+        assertEquals(11L, map.get(1));
+    }
+
+    @Test
+    public void missingKeys() {
+        SQLIntLongMap map = new SQLIntLongMap();
+        assertTrue(map.isEmpty());
+        map.put(7, 70L);
+        assertFalse(map.containsKey(8));
+        assertEquals(0L, map.get(8));
+        assertEquals(-1L, map.get(8, -1L));
+    }
+
+    @Test
+    public void grow() {
+        SQLIntLongMap map = new SQLIntLongMap(0);
+        for (int i = 0; i < 10_000; i += 1) {
+            map.put(i * 1024, i);
+        }
+        assertEquals(10_000, map.size());
+        for (int i = 0; i < 10_000; i += 1) {
+            assertEquals(i, map.get(i * 1024, -1L));
+        }
+        assertFalse(map.containsKey(1));
+    }
+
+    @Test
+    public void keysAndClear() {
+        SQLIntLongMap map = new SQLIntLongMap(4);
+        map.put(3, 30L);
+        map.put(4, 40L);
+        int[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(new int[] {3, 4}, keys);
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(3));
+    }
+
+    @Test
+    public void rejectExpectedSizeOutOfRange() {
+        for (int size : new int[] {-1, SQLIntLongMap.MAX_SIZE + 1, Integer.MAX_VALUE}) {
+            try {
+                new SQLIntLongMap(size);
+                fail("Accepted expected size " + size);
+            } catch (IllegalArgumentException iae) {
+                continue;
+            }
+        }
+    }
+}
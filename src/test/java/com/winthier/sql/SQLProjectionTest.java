@@ -0,0 +1,70 @@
+package com.winthier.sql;
+
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Check how record components are matched to columns.  No database
+ * is required.
+ */
+public class SQLProjectionTest {
+    private SQLTable<SQLLog> table;
+
+    private record ByField(Long id, String playerName) { }
+    private record ByColumn(String player_name, Object mat) { }
+    private record Primitive(long id) { }
+    private record WrongType(int playerName) { }
+    private record Unknown(String nickname) { }
+
+    @Before
+    public void setUp() {
+        table = new SQLTable<>(SQLLog.class, new SQLDatabase(null, new Config()));
+    }
+
+    private List<String> columnNames(Class<? extends Record> type) {
+        return table.getProjection(type).columns().stream().map(SQLColumn::getColumnName).toList();
+    }
+
+    private void assertRejected(Class<? extends Record> type) {
+        try {
+            table.getProjection(type);
+            fail("Projection accepted: " + type.getName());
+        } catch (IllegalArgumentException iae) {
+            return;
+        }
+    }
+
+    @Test
+    public void matchFieldNames() {
+        assertEquals(List.of("id", "player_name"), columnNames(ByField.class));
+    }
+
+    @Test
+    public void matchColumnNamesAndSupertypes() {
+        assertEquals(List.of("player_name", "mat"), columnNames(ByColumn.class));
+    }
+
+    @Test
+    public void acceptPrimitive() {
+        assertEquals(List.of("id"), columnNames(Primitive.class));
+    }
+
+    @Test
+    public void rejectWrongType() {
+        assertRejected(WrongType.class);
+    }
+
+    @Test
+    public void rejectUnknownColumn() {
+        assertRejected(Unknown.class);
+    }
+
+    @Test
+    public void computeOnce() {
+        assertSame(table.getProjection(ByField.class), table.getProjection(ByField.class));
+    }
+}
@@ -0,0 +1,140 @@
+package com.winthier.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that the publisher fetches pages only on demand and stops
+ * when cancelled.  Pages come from a list, signals are delivered on
+ * the test thread.
+ */
+public class SQLPublisherTest {
+    private final List<Integer> fetches = new ArrayList<>();
+
+    private SQLPublisher<SQLLog> publisher(int rowCount, int batchSize, long limit) {
+        return new SQLPublisher<>((cursor, size) -> {
+                fetches.add(size);
+                int start = cursor == null ? 0 : (Integer) cursor.getValues().get(0);
+                int end = Math.min(rowCount, start + size);
+                List<SQLLog> rows = new ArrayList<>();
+                for (int i = start; i < end; i += 1) {
+                    SQLLog row = new SQLLog();
+                    row.setId((long) i);
+                    rows.add(row);
+                }
+                SQLPage.Cursor next = end < rowCount && rows.size() == size
+                    ? new SQLPage.Cursor(List.of(end))
+                    : null;
+                return CompletableFuture.completedFuture(new SQLPage<>(rows, next));
+            }, batchSize, limit, Runnable::run);
+    }
+
+    private static final class Recorder implements Flow.Subscriber<SQLLog> {
+        private final long initialRequest;
+        private final int cancelAfter;
+        private Flow.Subscription subscription;
+        private final List<Long> ids = new ArrayList<>();
+        private Throwable error;
+        private boolean complete;
+
+        Recorder(final long initialRequest, final int cancelAfter) {
+            this.initialRequest = initialRequest;
+            this.cancelAfter = cancelAfter;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription theSubscription) {
+            this.subscription = theSubscription;
+            if (initialRequest != 0) subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(SQLLog row) {
+            ids.add(row.getId());
+            if (ids.size() == cancelAfter) subscription.cancel();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+    }
+
+    @Test
+    public void noFetchWithoutDemand() {
+        Recorder recorder = new Recorder(0, -1);
+        publisher(10, 2, -1).subscribe(recorder);
+        assertTrue(fetches.isEmpty());
+        assertTrue(recorder.ids.isEmpty());
+    }
+
+    @Test
+    public void deliverOnlyDemand() {
+        Recorder recorder = new Recorder(3, -1);
+        publisher(10, 2, -1).subscribe(recorder);
+        assertEquals(List.of(0L, 1L, 2L), recorder.ids);
+        assertEquals(List.of(2, 2), fetches);
+        assertFalse(recorder.complete);
+        recorder.subscription.request(1);
+        assertEquals(4, recorder.ids.size());
+        assertEquals(List.of(2, 2), fetches);
+    }
+
+    @Test
+    public void completeAfterLastPage() {
+        Recorder recorder = new Recorder(Long.MAX_VALUE, -1);
+        publisher(5, 2, -1).subscribe(recorder);
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L), recorder.ids);
+        assertEquals(List.of(2, 2, 2), fetches);
+        assertTrue(recorder.complete);
+    }
+
+    @Test
+    public void stopAtLimit() {
+        Recorder recorder = new Recorder(Long.MAX_VALUE, -1);
+        publisher(10, 2, 3).subscribe(recorder);
+        assertEquals(List.of(0L, 1L, 2L), recorder.ids);
+        assertEquals(List.of(2, 1), fetches);
+        assertTrue(recorder.complete);
+    }
+
+    @Test
+    public void cancelStopsDelivery() {
+        Recorder recorder = new Recorder(Long.MAX_VALUE, 3);
+        publisher(10, 2, -1).subscribe(recorder);
+        assertEquals(List.of(0L, 1L, 2L), recorder.ids);
+        assertEquals(List.of(2, 2), fetches);
+        recorder.subscription.request(5);
+        assertEquals(3, recorder.ids.size());
+        assertFalse(recorder.complete);
+    }
+
+    @Test
+    public void rejectNonPositiveRequest() {
+        Recorder recorder = new Recorder(0, -1);
+        publisher(10, 2, -1).subscribe(recorder);
+        recorder.subscription.request(0);
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+        assertTrue(fetches.isEmpty());
+    }
+
+    @Test
+    public void reportFetchError() {
+        Recorder recorder = new Recorder(1, -1);
+        new SQLPublisher<SQLLog>((cursor, size) -> CompletableFuture.failedFuture(new IllegalStateException("fail")),
+                                 2, -1, Runnable::run).subscribe(recorder);
+        assertTrue(recorder.error instanceof IllegalStateException);
+        assertFalse(recorder.complete);
+    }
+}
@@ -0,0 +1,82 @@
+package com.winthier.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check which saves may share a statement, and how coalesced tasks
+ * receive their results.
+ */
+public class SQLTaskTest {
+    private static final SQLTask.Save SAVE = new SQLTask.Save(null, false, false, Set.of("name"));
+
+    private static SQLTask<Integer> saveTask(SQLTask.Save save, SQLRow row) {
+        SQLTask<Integer> task = new SQLTask<>("a", SQLPriority.INTERACTIVE, null, () -> 1, null, null);
+        if (save != null) task.setSave(save, row);
+        return task;
+    }
+
+    @Test
+    public void joinSameShape() {
+        List<SQLTask<?>> batch = new ArrayList<>(List.of(saveTask(SAVE, new SQLLog())));
+        assertTrue(SQLTask.canJoin(batch, saveTask(new SQLTask.Save(null, false, false, Set.of("name")), new SQLLog())));
+    }
+
+    @Test
+    public void doNotJoinSameRow() {
+        SQLLog row = new SQLLog();
+        List<SQLTask<?>> batch = new ArrayList<>(List.of(saveTask(SAVE, new SQLLog()), saveTask(SAVE, row)));
+        assertFalse(SQLTask.canJoin(batch, saveTask(SAVE, row)));
+    }
+
+    @Test
+    public void doNotJoinOtherShape() {
+        List<SQLTask<?>> batch = new ArrayList<>(List.of(saveTask(SAVE, new SQLLog())));
+        assertFalse(SQLTask.canJoin(batch, saveTask(new SQLTask.Save(null, true, false, Set.of("name")), new SQLLog())));
+        assertFalse(SQLTask.canJoin(batch, saveTask(new SQLTask.Save(null, false, false, Set.of("time")), new SQLLog())));
+        assertFalse(SQLTask.canJoin(batch, saveTask(null, null)));
+    }
+
+    @Test
+    public void doNotJoinPlainTask() {
+        List<SQLTask<?>> batch = new ArrayList<>(List.of(saveTask(null, null)));
+        assertFalse(SQLTask.canJoin(batch, saveTask(SAVE, new SQLLog())));
+    }
+
+    @Test
+    public void absorbedTasksShareResult() {
+        List<String> results = new ArrayList<>();
+        SQLTask<String> task = new SQLTask<>("a", SQLPriority.INTERACTIVE, "k", () -> "x", r -> results.add("1" + r), null);
+        task.absorb(new SQLTask<String>("a", SQLPriority.INTERACTIVE, "k", () -> "y", r -> results.add("2" + r), null));
+        task.absorb(new SQLTask<String>("a", SQLPriority.INTERACTIVE, "k", () -> "z", r -> results.add("3" + r), null));
+        task.run();
+        assertEquals(List.of("1x", "2x", "3x"), results);
+    }
+
+    @Test
+    public void absorbedTasksShareError() {
+        List<Throwable> errors = new ArrayList<>();
+        SQLTask<String> task = new SQLTask<>("a", SQLPriority.INTERACTIVE, "k", () -> {
+                throw new IllegalStateException("fail");
+            }, null, errors::add);
+        task.absorb(new SQLTask<String>("a", SQLPriority.INTERACTIVE, "k", () -> "y", null, errors::add));
+        task.run();
+        assertEquals(2, errors.size());
+        assertTrue(errors.get(1) instanceof IllegalStateException);
+    }
+
+    @Test
+    public void finishOnlyOnce() {
+        List<Object> signals = new ArrayList<>();
+        SQLTask<String> task = new SQLTask<>("a", SQLPriority.INTERACTIVE, null, () -> "x", signals::add, signals::add);
+        task.complete("merged");
+        task.run();
+        task.abandon(new IllegalStateException());
+        assertEquals(List.of("merged"), signals);
+    }
+}
@@ -0,0 +1,115 @@
+package com.winthier.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check how dirty rows are merged.  The timer never fires, rows are
+ * drained by hand.
+ */
+public class SQLWriteBehindTest {
+    private SQLTable<SQLLog> table;
+    private SQLWriteBehind writeBehind;
+    private final List<SQLWriteBehind.Dirty> written = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        table = new SQLTable<>(SQLLog.class, new SQLDatabase(null, new Config()));
+        writeBehind = new SQLWriteBehind("test", 3_600_000L, written::add);
+    }
+
+    @After
+    public void tearDown() {
+        writeBehind.close();
+    }
+
+    private static SQLLog row(Long id) {
+        SQLLog row = new SQLLog();
+        row.setId(id);
+        return row;
+    }
+
+    @Test
+    public void mergeSameRow() {
+        SQLLog row = row(1L);
+        writeBehind.add(table, row, true, Set.of("playerName"), null, null);
+        writeBehind.add(table, row, true, Set.of("material"), null, null);
+        assertEquals(1, writeBehind.size());
+        writeBehind.flush();
+        assertEquals(1, written.size());
+        assertTrue(written.get(0).isUpdate());
+        assertEquals(Set.of("playerName", "material"), written.get(0).getFields());
+        assertEquals(0, writeBehind.size());
+    }
+
+    @Test
+    public void saveIncludesUpdate() {
+        SQLLog row = row(1L);
+        writeBehind.add(table, row, true, Set.of("playerName"), null, null);
+        writeBehind.add(table, row, false, null, null, null);
+        writeBehind.flush();
+        assertFalse(written.get(0).isUpdate());
+        assertNull(written.get(0).getFields());
+    }
+
+    @Test
+    public void mergeObjectsWithSameId() {
+        SQLLog first = row(1L);
+        SQLLog second = row(1L);
+        writeBehind.add(table, first, true, null, null, null);
+        writeBehind.add(table, second, true, null, null, null);
+        writeBehind.add(table, row(2L), true, null, null, null);
+        assertEquals(2, writeBehind.size());
+        writeBehind.flush();
+        assertSame(second, written.get(0).getRow());
+    }
+
+    @Test
+    public void keepKeyWhenIdIsAssigned() {
+        SQLLog row = row(null);
+        writeBehind.add(table, row, false, null, null, null);
+        row.setId(5L);
+        writeBehind.add(table, row, false, null, null, null);
+        assertEquals(1, writeBehind.size());
+    }
+
+    @Test
+    public void newObjectsStaySeparate() {
+        writeBehind.add(table, row(null), false, null, null, null);
+        writeBehind.add(table, row(null), false, null, null, null);
+        assertEquals(2, writeBehind.size());
+    }
+
+    @Test
+    public void callbacksAreChained() {
+        List<Integer> results = new ArrayList<>();
+        SQLLog row = row(1L);
+        writeBehind.add(table, row, true, null, results::add, null);
+        writeBehind.add(table, row, true, null, results::add, null);
+        writeBehind.flush();
+        written.get(0).getOnResult().accept(1);
+        assertEquals(List.of(1, 1), results);
+    }
+
+    @Test
+    public void discardReportsZero() {
+        List<Integer> results = new ArrayList<>();
+        SQLLog row = row(null);
+        writeBehind.add(table, row, false, null, results::add, null);
+        row.setId(5L);
+        writeBehind.discard(table, row);
+        assertEquals(0, writeBehind.size());
+        assertEquals(List.of(0), results);
+        writeBehind.flush();
+        assertTrue(written.isEmpty());
+    }
+}